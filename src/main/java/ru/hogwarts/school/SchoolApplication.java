@@ -2,14 +2,28 @@ package ru.hogwarts.school;
 
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.hogwarts.school.service.SchoolCopyCommand;
 
 @SpringBootApplication
 @OpenAPIDefinition
 public class SchoolApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(SchoolApplication.class, args);
+		SpringApplication application = new SpringApplication(SchoolApplication.class);
+		boolean copyMode = SchoolCopyCommand.isRequested(args);
+
+		if (copyMode) {
+			application.setWebApplicationType(WebApplicationType.NONE);
+		}
+
+		ConfigurableApplicationContext context = application.run(args);
+
+		if (copyMode) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
@@ -0,0 +1,115 @@
+package ru.hogwarts.school.controller;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.hogwarts.school.service.AvatarCache;
+import ru.hogwarts.school.service.AvatarRegionWriter;
+import ru.hogwarts.school.service.AvatarService;
+import ru.hogwarts.school.storage.AvatarRegion;
+import ru.hogwarts.school.storage.AvatarStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves avatar content by its content key ({@code /static/avatars/{sha256}.{ext}}) straight from the avatar
+ * store, bypassing the dispatcher servlet. The key is the SHA-256 of the content, so a URL never changes
+ * meaning and responses are cacheable forever. The Content-Type is the one stored for the content, looked up
+ * once per key; a URL whose extension does not match it is not found, so a name like {@code .svg} cannot
+ * change how the browser treats the bytes.
+ */
+public class AvatarContentServlet extends HttpServlet {
+    private static final Pattern FILE_NAME = Pattern.compile("/([0-9a-f]{64}(?:-\\d+|-opt)?)\\.(\\w+)");
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String X_CONTENT_TYPE_OPTIONS = "X-Content-Type-Options";
+
+    private final transient AvatarService avatarService;
+    private final transient AvatarStore avatarStore;
+    private final transient AvatarCache avatarCache;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarContentServlet.class);
+
+    public AvatarContentServlet(AvatarService avatarService, AvatarStore avatarStore, AvatarCache avatarCache) {
+        this.avatarService = avatarService;
+        this.avatarStore = avatarStore;
+        this.avatarCache = avatarCache;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = request.getPathInfo() == null ? "" : request.getPathInfo();
+        Matcher matcher = FILE_NAME.matcher(path);
+        response.setHeader(X_CONTENT_TYPE_OPTIONS, "nosniff");
+
+        if (!matcher.matches()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        String key = matcher.group(1);
+        String extension = matcher.group(2);
+        Optional<String> mediaType = avatarService.findContentMediaType(key)
+                .filter(type -> matchesExtension(type, extension));
+
+        if (mediaType.isEmpty()) {
+            logger.debug("There is no avatar content {} stored as .{}", key, extension);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+
+        if (new ServletWebRequest(request, response).checkNotModified("\"" + key + "\"")) {
+            return;
+        }
+
+        Optional<AvatarRegion> region = avatarStore.locate(key);
+        ByteBuffer content = null;
+
+        if (region.isEmpty()) {
+            try {
+                content = avatarCache.contentBuffer(key, () -> avatarStore.read(key).orElseThrow(() -> new NoSuchFileException(key)));
+            } catch (NoSuchFileException e) {
+                logger.debug("There is no stored avatar content {}", key);
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+                return;
+            }
+        }
+
+        long length = region.isPresent() ? region.get().length() : content.remaining();
+        response.setContentType(mediaType.get());
+        response.setContentLengthLong(length);
+
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (region.isPresent()) {
+            AvatarRegionWriter.write(region.get(), 0, length, request, response);
+        } else {
+            AvatarRegionWriter.write(content, response.getOutputStream());
+        }
+    }
+
+    private static boolean matchesExtension(String mediaType, String extension) {
+        MediaType type = MediaType.parseMediaType(mediaType);
+
+        return type.getSubtype().equalsIgnoreCase(extension)
+                || MediaTypeFactory.getMediaTypes("avatar." + extension).stream().anyMatch(type::equalsTypeAndSubtype);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.hogwarts.school.controller;
+
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.service.AvatarCache;
+import ru.hogwarts.school.service.AvatarService;
+import ru.hogwarts.school.storage.AvatarStore;
+
+@Configuration
+public class AvatarContentServletConfiguration {
+    @Bean
+    public ServletRegistrationBean<AvatarContentServlet> avatarContentServlet(
+            AvatarService avatarService,
+            AvatarStore avatarStore,
+            AvatarCache avatarCache
+    ) {
+        ServletRegistrationBean<AvatarContentServlet> registration = new ServletRegistrationBean<>(
+                new AvatarContentServlet(avatarService, avatarStore, avatarCache),
+                AvatarMetadata.STATIC_URL_PREFIX + "*"
+        );
+        registration.setName("avatarContentServlet");
+
+        return registration;
+    }
+}
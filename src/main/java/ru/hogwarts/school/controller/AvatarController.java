@@ -1,46 +1,119 @@
 package ru.hogwarts.school.controller;
 
-import org.springframework.core.io.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
-import ru.hogwarts.school.model.Avatar;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.model.AvatarCacheStats;
+import ru.hogwarts.school.model.AvatarImportResult;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.model.AvatarPopularityEntry;
+import ru.hogwarts.school.model.AvatarScrubStats;
+import ru.hogwarts.school.model.AvatarVariant;
+import ru.hogwarts.school.service.AvatarImportService;
+import ru.hogwarts.school.service.AvatarRegionWriter;
+import ru.hogwarts.school.service.AvatarScrubber;
 import ru.hogwarts.school.service.AvatarService;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("avatar")
 public class AvatarController {
+    private static final int MAX_BATCH_SIZE = 500;
+
     private final AvatarService avatarService;
+    private final AvatarImportService avatarImportService;
+    private final AvatarScrubber avatarScrubber;
 
-    public AvatarController(AvatarService avatarService) {
+    public AvatarController(
+            AvatarService avatarService,
+            AvatarImportService avatarImportService,
+            AvatarScrubber avatarScrubber
+    ) {
         this.avatarService = avatarService;
+        this.avatarImportService = avatarImportService;
+        this.avatarScrubber = avatarScrubber;
     }
 
     @GetMapping
-    public List<Avatar> getAllAvatars(@RequestParam("page") Integer pageNumber, @RequestParam("size") Integer pageSize) {
+    public List<AvatarMetadata> getAllAvatars(@RequestParam("page") Integer pageNumber, @RequestParam("size") Integer pageSize) {
         return avatarService.getAllAvatars(pageNumber, pageSize);
     }
 
+    @GetMapping("/cache/stats")
+    public AvatarCacheStats getCacheStats() {
+        return avatarService.getCacheStats();
+    }
+
+    @GetMapping("/scrub/stats")
+    public AvatarScrubStats getScrubStats() {
+        return avatarScrubber.getStats();
+    }
+
+    @GetMapping("/popular")
+    public List<AvatarPopularityEntry> getPopularAvatars(@RequestParam(defaultValue = "20") int limit) {
+        return avatarService.getPopularAvatars(limit);
+    }
+
     @GetMapping(value = "/{studentId}/avatar/preview")
-    public ResponseEntity<byte[]> downloadAvatarFromDb(@PathVariable Long studentId) {
-        Avatar avatar = avatarService.findAvatar(studentId);
+    public ResponseEntity<StreamingResponseBody> downloadAvatarFromDb(
+            @PathVariable Long studentId,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest webRequest
+    ) throws IOException {
+        AvatarMetadata avatar = avatarService.findAvatarMetadata(studentId);
+        AvatarVariant variant = avatarService.findPreviewVariant(avatar, size, accept);
+
+        // Also writes the ETag and Last-Modified headers; a matching validator answers 304 before the content is read.
+        if (webRequest.checkNotModified(variant.eTag(), avatar.lastModified())) {
+            return null;
+        }
+
+        ByteBuffer content = avatarService.findAvatarContent(avatar, variant);
 
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(avatar.getMediaType()));
-        headers.setContentLength(avatar.getFileSize());
+        headers.setVary(List.of(HttpHeaders.ACCEPT));
+        headers.setContentType(MediaType.parseMediaType(variant.mediaType()));
+        headers.setContentLength(content.remaining());
 
-        return ResponseEntity.status(HttpStatus.OK).headers(headers).body(avatar.getData());
+        return ResponseEntity.status(HttpStatus.OK).headers(headers).body(out -> AvatarRegionWriter.write(content, out));
     }
 
-    @GetMapping(value = "/{studentId}/avatar")
-    public ResponseEntity<Resource> downloadAvatar(@PathVariable Long studentId) throws IOException {
-        return avatarService.downloadAvatar(studentId);
+    @GetMapping(value = "/batch", produces = "application/zip")
+    public ResponseEntity<StreamingResponseBody> downloadAvatars(@RequestParam List<Long> studentIds) {
+        if (studentIds.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Map<Long, AvatarMetadata> avatars = avatarService.findAvatarMetadata(studentIds);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=avatars.zip")
+                .body(out -> avatarService.writeAvatarArchive(studentIds, avatars, out));
+    }
+
+    @RequestMapping(value = "/{studentId}/avatar", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void downloadAvatar(
+            @PathVariable Long studentId,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        AvatarMetadata avatar = avatarService.findAvatarMetadata(studentId);
+
+        avatarService.downloadAvatar(avatar, request, response);
     }
 
     @PostMapping(value = "/{studentId}/avatar", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -48,13 +121,14 @@ public class AvatarController {
             @PathVariable Long studentId,
             @RequestParam MultipartFile avatar
     ) throws IOException {
-        if (avatar.getSize() > 1024 * 300) {
-            return ResponseEntity.badRequest().body("File is too big");
-        }
+        String url = avatarService.uploadAvatar(studentId, avatar);
 
-        avatarService.uploadAvatar(studentId, avatar);
+        return ResponseEntity.ok().location(URI.create(url)).body(url);
+    }
 
-        return ResponseEntity.ok().build();
+    @PostMapping(value = "/import", consumes = "application/zip")
+    public List<AvatarImportResult> importAvatars(InputStream archive) throws IOException {
+        return avatarImportService.importArchive(archive);
     }
 
     @DeleteMapping("{studentId}")
@@ -0,0 +1,26 @@
+package ru.hogwarts.school.controller;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import ru.hogwarts.school.service.AvatarUploadLimits;
+
+/**
+ * Multipart limits derived from the avatar upload limits, so raising {@code avatar.upload.max-size} or a
+ * per-type limit cannot be undercut by a separately configured container limit. Uploads are limited while
+ * streaming, and a part up to the largest limit is kept in memory instead of a temp file.
+ */
+@Configuration
+public class AvatarMultipartConfiguration {
+    @Bean
+    public MultipartConfigElement multipartConfigElement(AvatarUploadLimits avatarUploadLimits) {
+        MultipartConfigFactory factory = new MultipartConfigFactory();
+        factory.setMaxFileSize(DataSize.ofBytes(avatarUploadLimits.largestMaxSize()));
+        factory.setMaxRequestSize(DataSize.ofBytes(avatarUploadLimits.largestRequestSize()));
+        factory.setFileSizeThreshold(DataSize.ofBytes(avatarUploadLimits.largestMaxSize()));
+
+        return factory.createMultipartConfig();
+    }
+}
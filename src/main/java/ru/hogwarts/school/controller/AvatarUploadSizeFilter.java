@@ -0,0 +1,59 @@
+package ru.hogwarts.school.controller;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.hogwarts.school.service.AvatarUploadLimits;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Rejects avatar uploads by their declared Content-Length before the multipart body is read.
+ * Bodies without a length (chunked) are limited while streaming by the multipart settings derived from
+ * the same limits, see {@link AvatarMultipartConfiguration}.
+ */
+@Component
+public class AvatarUploadSizeFilter extends OncePerRequestFilter {
+    private static final Pattern UPLOAD_PATH = Pattern.compile("/avatar/\\d+/avatar");
+
+    private final AvatarUploadLimits avatarUploadLimits;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarUploadSizeFilter.class);
+
+    public AvatarUploadSizeFilter(AvatarUploadLimits avatarUploadLimits) {
+        this.avatarUploadLimits = avatarUploadLimits;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !UPLOAD_PATH.matcher(request.getServletPath()).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+
+        if (contentLength > avatarUploadLimits.largestRequestSize()) {
+            logger.warn("Rejected avatar upload of {} bytes before reading it", contentLength);
+
+            // The body stays unread; closing the connection keeps the container from draining it.
+            response.setHeader(HttpHeaders.CONNECTION, "close");
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "File is too big");
+
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.hogwarts.school.controller;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.convert.converter.ConverterFactory;
+import org.springframework.format.FormatterRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Locale;
+
+/**
+ * Binds enum request parameters regardless of case, so {@code ?format=json} and a lower-case
+ * {@code defaultValue} select the upper-case constant; the default binding goes through the case-sensitive
+ * {@link Enum#valueOf}.
+ */
+@Configuration
+public class EnumParameterConfiguration implements WebMvcConfigurer {
+    @Override
+    public void addFormatters(FormatterRegistry registry) {
+        registry.addConverterFactory(new LenientEnumConverterFactory());
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static class LenientEnumConverterFactory implements ConverterFactory<String, Enum> {
+        @Override
+        public <T extends Enum> Converter<String, T> getConverter(Class<T> targetType) {
+            return source -> source.isBlank()
+                    ? null
+                    : (T) Enum.valueOf(targetType, source.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+}
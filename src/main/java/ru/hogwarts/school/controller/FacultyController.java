@@ -1,9 +1,15 @@
 package ru.hogwarts.school.controller;
 
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.FacultySort;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.service.FacultyService;
+import ru.hogwarts.school.service.JsonStreamWriter;
 
 import java.util.List;
 
@@ -21,6 +27,24 @@ public class FacultyController {
         return facultyService.getAllFaculties();
     }
 
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<Faculty>> getFacultiesPage(
+            @RequestParam(defaultValue = "id") FacultySort sort,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor
+    ) {
+        return PageLinks.ok(facultyService.getFacultiesPage(sort, limit, cursor));
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportFaculties(
+            @RequestParam(defaultValue = "ndjson") JsonStreamWriter.Format format
+    ) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .body(out -> facultyService.writeAllFaculties(out, format));
+    }
+
     @GetMapping("/by-name-or-color")
     public List<Faculty> findFacultiesByNameOrColor(
             @RequestParam(required = false) String name,
@@ -34,6 +58,15 @@ public class FacultyController {
         return facultyService.getFacultyStudents(id);
     }
 
+    @GetMapping("{id}/student/page")
+    public ResponseEntity<CursorPage<Student>> getFacultyStudentsPage(
+            @PathVariable long id,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor
+    ) {
+        return PageLinks.ok(facultyService.getFacultyStudentsPage(id, limit, cursor));
+    }
+
     @GetMapping("{id}")
     public Faculty getFaculty(@PathVariable long id) {
         return facultyService.findFaculty(id);
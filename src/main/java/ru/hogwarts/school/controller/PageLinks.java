@@ -0,0 +1,29 @@
+package ru.hogwarts.school.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.hogwarts.school.model.CursorPage;
+
+final class PageLinks {
+    private PageLinks() {
+    }
+
+    /**
+     * Responds with the page and, unless it is the last one, a {@code Link: <...>; rel="next"} header holding
+     * the current request URL with the cursor of the next page.
+     */
+    static <T> ResponseEntity<CursorPage<T>> ok(CursorPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (page.nextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.nextCursor())
+                    .toUriString();
+
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+
+        return response.body(page);
+    }
+}
@@ -1,8 +1,17 @@
 package ru.hogwarts.school.controller;
 
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.model.StudentAgeStats;
+import ru.hogwarts.school.model.StudentNamePage;
+import ru.hogwarts.school.model.StudentSort;
+import ru.hogwarts.school.service.AvatarService;
+import ru.hogwarts.school.service.JsonStreamWriter;
 import ru.hogwarts.school.service.StudentService;
 
 import java.util.List;
@@ -10,10 +19,14 @@ import java.util.List;
 @RestController
 @RequestMapping("student")
 public class StudentController {
+    private static final int MAX_BULK_SIZE = 10_000;
+
     private final StudentService studentService;
+    private final AvatarService avatarService;
 
-    public StudentController(StudentService studentService) {
+    public StudentController(StudentService studentService, AvatarService avatarService) {
         this.studentService = studentService;
+        this.avatarService = avatarService;
     }
 
     @GetMapping
@@ -21,6 +34,24 @@ public class StudentController {
         return studentService.getAllStudents();
     }
 
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<Student>> getStudentsPage(
+            @RequestParam(defaultValue = "id") StudentSort sort,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor
+    ) {
+        return PageLinks.ok(studentService.getStudentsPage(sort, limit, cursor));
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportStudents(
+            @RequestParam(defaultValue = "ndjson") JsonStreamWriter.Format format
+    ) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .body(out -> studentService.writeAllStudents(out, format));
+    }
+
     @GetMapping("/by-age")
     public List<Student> findStudentsByAge(@RequestParam int age) {
         return studentService.getStudentsByAge(age);
@@ -31,11 +62,25 @@ public class StudentController {
         return studentService.getStudentsByAgeBetween(min, max);
     }
 
+    @GetMapping("/by-name-prefix")
+    public StudentNamePage findStudentsByNamePrefix(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor
+    ) {
+        return studentService.getStudentsByNamePrefix(prefix, limit, cursor);
+    }
+
     @GetMapping("{id}/faculty")
     public Faculty getStudentFaculty(@PathVariable long id) {
         return studentService.getStudentFaculty(id);
     }
 
+    @GetMapping("{id}/avatar-url")
+    public String getStudentAvatarUrl(@PathVariable long id) {
+        return avatarService.findAvatarUrl(id);
+    }
+
     @GetMapping("{id}")
     public Student getStudent(@PathVariable long id) {
         return studentService.findStudent(id);
@@ -51,6 +96,11 @@ public class StudentController {
         return studentService.getStudentsAverageAge();
     }
 
+    @GetMapping("/age-stats")
+    public StudentAgeStats getStudentsAgeStats() {
+        return studentService.getAgeStats();
+    }
+
     @GetMapping("/last")
     public List<Student> getLastStudentsInList() {
         return studentService.getLastStudentsInList();
@@ -81,6 +131,15 @@ public class StudentController {
         return studentService.addStudent(student);
     }
 
+    @PostMapping("/bulk")
+    public ResponseEntity<List<Long>> addStudents(@RequestBody List<Student> students) {
+        if (students.size() > MAX_BULK_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(studentService.addStudents(students));
+    }
+
     @PutMapping
     public Student updateStudent(@RequestBody Student student) {
         return studentService.updateStudent(student);
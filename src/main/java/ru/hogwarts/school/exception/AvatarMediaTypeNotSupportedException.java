@@ -0,0 +1,11 @@
+package ru.hogwarts.school.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+public class AvatarMediaTypeNotSupportedException extends RuntimeException {
+    public AvatarMediaTypeNotSupportedException(String mediaType) {
+        super("Unsupported avatar media type: " + mediaType);
+    }
+}
@@ -4,7 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 
-import java.util.Arrays;
+import java.time.Instant;
 import java.util.Objects;
 
 @Entity
@@ -16,12 +16,11 @@ public class Avatar {
     private String filePath;
     private long fileSize;
     private String mediaType;
-
-    @Lob
-    private byte[] data;
+    private String digest;
+    private Instant updatedAt;
 
     @OneToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "student_id")
+    @JoinColumn(name = "student_id", unique = true)
     @JsonIgnore
     private Student student;
 
@@ -57,12 +56,20 @@ public class Avatar {
         this.mediaType = mediaType;
     }
 
-    public byte[] getData() {
-        return data;
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
     }
 
-    public void setData(byte[] data) {
-        this.data = data;
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
     }
 
     public Student getStudent() {
@@ -78,11 +85,11 @@ public class Avatar {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Avatar avatar = (Avatar) o;
-        return fileSize == avatar.fileSize && Objects.equals(id, avatar.id) && Objects.equals(filePath, avatar.filePath) && Objects.equals(mediaType, avatar.mediaType) && Objects.deepEquals(data, avatar.data) && Objects.equals(student, avatar.student);
+        return fileSize == avatar.fileSize && Objects.equals(id, avatar.id) && Objects.equals(filePath, avatar.filePath) && Objects.equals(mediaType, avatar.mediaType) && Objects.equals(digest, avatar.digest) && Objects.equals(updatedAt, avatar.updatedAt);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, filePath, fileSize, mediaType, Arrays.hashCode(data), student);
+        return Objects.hash(id, filePath, fileSize, mediaType, digest, updatedAt);
     }
 }
@@ -0,0 +1,78 @@
+package ru.hogwarts.school.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.util.Objects;
+
+@Entity
+public class AvatarBlob {
+    @Id
+    private String digest;
+    private String filePath;
+    private long fileSize;
+    private int referenceCount;
+    private String mediaType;
+    private boolean optimized;
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    public void setReferenceCount(int referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public void setMediaType(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public boolean isOptimized() {
+        return optimized;
+    }
+
+    public void setOptimized(boolean optimized) {
+        this.optimized = optimized;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AvatarBlob avatarBlob = (AvatarBlob) o;
+        return fileSize == avatarBlob.fileSize && referenceCount == avatarBlob.referenceCount && optimized == avatarBlob.optimized && Objects.equals(digest, avatarBlob.digest) && Objects.equals(filePath, avatarBlob.filePath) && Objects.equals(mediaType, avatarBlob.mediaType);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(digest, filePath, fileSize, referenceCount, mediaType, optimized);
+    }
+}
@@ -0,0 +1,14 @@
+package ru.hogwarts.school.model;
+
+public record AvatarCacheStats(
+        double hitRate,
+        long hitCount,
+        long missCount,
+        long evictionCount,
+        long evictionWeight,
+        long weightedSize,
+        long entries,
+        long pinnedEntries,
+        boolean offHeap
+) {
+}
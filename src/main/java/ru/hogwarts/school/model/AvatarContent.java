@@ -0,0 +1,45 @@
+package ru.hogwarts.school.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+
+import java.util.Objects;
+
+@Entity
+public class AvatarContent {
+    @Id
+    private String digest;
+
+    @Lob
+    private byte[] data;
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AvatarContent avatarContent = (AvatarContent) o;
+        return Objects.equals(digest, avatarContent.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(digest);
+    }
+}
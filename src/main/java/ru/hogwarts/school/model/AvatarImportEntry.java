@@ -0,0 +1,7 @@
+package ru.hogwarts.school.model;
+
+/**
+ * An avatar read from an import archive, already validated and hashed.
+ */
+public record AvatarImportEntry(String name, long studentId, String mediaType, String digest, byte[] data) {
+}
@@ -0,0 +1,21 @@
+package ru.hogwarts.school.model;
+
+public record AvatarImportResult(String entry, Long studentId, Status status, String message) {
+    public enum Status {
+        IMPORTED,
+        REJECTED,
+        FAILED
+    }
+
+    public static AvatarImportResult imported(String entry, long studentId) {
+        return new AvatarImportResult(entry, studentId, Status.IMPORTED, null);
+    }
+
+    public static AvatarImportResult rejected(String entry, Long studentId, String message) {
+        return new AvatarImportResult(entry, studentId, Status.REJECTED, message);
+    }
+
+    public static AvatarImportResult failed(String entry, Long studentId, String message) {
+        return new AvatarImportResult(entry, studentId, Status.FAILED, message);
+    }
+}
@@ -0,0 +1,45 @@
+package ru.hogwarts.school.model;
+
+import org.springframework.http.MediaType;
+
+import java.time.Instant;
+
+public record AvatarMetadata(
+        Long id,
+        Long studentId,
+        String filePath,
+        long fileSize,
+        String mediaType,
+        String digest,
+        Instant updatedAt,
+        boolean optimized
+) {
+    public static final String STATIC_URL_PREFIX = "/static/avatars/";
+
+    public AvatarMetadata(Long id, Long studentId, String filePath, long fileSize, String mediaType, String digest, Instant updatedAt) {
+        this(id, studentId, filePath, fileSize, mediaType, digest, updatedAt, false);
+    }
+
+    /**
+     * Content-addressed URL of an avatar; it never changes meaning, so it can be cached forever.
+     */
+    public static String staticUrl(String digest, String mediaType) {
+        return STATIC_URL_PREFIX + digest + "." + MediaType.parseMediaType(mediaType).getSubtype();
+    }
+
+    public String url() {
+        return digest == null ? null : staticUrl(digest, mediaType);
+    }
+
+    public String eTag() {
+        return digest == null ? null : "\"" + digest + "\"";
+    }
+
+    public AvatarVariant original() {
+        return new AvatarVariant(digest, mediaType);
+    }
+
+    public long lastModified() {
+        return updatedAt == null ? -1 : updatedAt.toEpochMilli();
+    }
+}
@@ -0,0 +1,17 @@
+package ru.hogwarts.school.model;
+
+import java.time.Instant;
+
+public record AvatarScrubStats(
+        long completedPasses,
+        long blobsChecked,
+        long missingContent,
+        long checksumMismatches,
+        long referencesFixed,
+        long orphanBlobsRemoved,
+        long orphanContentRemoved,
+        long danglingAvatars,
+        int orphanCandidates,
+        Instant lastPassCompletedAt
+) {
+}
@@ -0,0 +1,14 @@
+package ru.hogwarts.school.model;
+
+/**
+ * One stored rendition of an avatar: the original upload or a derived image such as a thumbnail.
+ */
+public record AvatarVariant(String key, String mediaType) {
+    /**
+     * The key as a strong validator; legacy avatars stored before content was keyed by digest have no key
+     * and get no ETag, so they are validated by their last modification only.
+     */
+    public String eTag() {
+        return key == null ? null : "\"" + key + "\"";
+    }
+}
@@ -0,0 +1,9 @@
+package ru.hogwarts.school.model;
+
+import java.util.List;
+
+/**
+ * @param nextCursor passed back as {@code cursor} to get the following page; {@code null} on the last page
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {
+}
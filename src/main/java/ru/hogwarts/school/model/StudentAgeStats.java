@@ -0,0 +1,14 @@
+package ru.hogwarts.school.model;
+
+public record StudentAgeStats(
+        long count,
+        long sum,
+        Integer minAge,
+        Integer maxAge
+) {
+    public static final StudentAgeStats EMPTY = new StudentAgeStats(0, 0, null, null);
+
+    public int averageAge() {
+        return count == 0 ? 0 : (int) (sum / count);
+    }
+}
@@ -0,0 +1,11 @@
+package ru.hogwarts.school.model;
+
+public record TableCopyReport(String table, String direction, long rows, long bytes, long millis) {
+    public long rowsPerSecond() {
+        return millis == 0 ? rows : rows * 1000 / millis;
+    }
+
+    public long bytesPerSecond() {
+        return millis == 0 ? bytes : bytes * 1000 / millis;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.hogwarts.school.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.hogwarts.school.model.AvatarBlob;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface AvatarBlobRepository extends JpaRepository<AvatarBlob, String> {
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE AvatarBlob b SET b.referenceCount = b.referenceCount + 1 WHERE b.digest = :digest")
+    int incrementReferenceCount(String digest);
+
+    /**
+     * Inserts a blob row holding one reference unless a row with the digest exists. When another transaction
+     * is inserting the same digest, this waits for it to finish and then reports the conflict.
+     *
+     * @return 1 if the row was inserted, 0 if it existed
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO avatar_blob (digest, file_size, reference_count, media_type) " +
+            "VALUES (:digest, :fileSize, 1, :mediaType) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(String digest, long fileSize, String mediaType);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE AvatarBlob b SET b.filePath = :filePath WHERE b.digest = :digest")
+    int updateFilePath(String digest, String filePath);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE AvatarBlob b SET b.filePath = :newPath WHERE b.digest = :digest AND b.filePath = :oldPath")
+    int replaceFilePath(String digest, String oldPath, String newPath);
+
+    /**
+     * Records that an optimized rendition is stored for the blob, so downloads can offer it without asking the store.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE AvatarBlob b SET b.optimized = true WHERE b.digest = :digest AND b.optimized = false")
+    int markOptimized(String digest);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE AvatarBlob b SET b.referenceCount = b.referenceCount - 1 WHERE b.digest = :digest")
+    int decrementReferenceCount(String digest);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM AvatarBlob b WHERE b.digest = :digest")
+    Optional<AvatarBlob> findForUpdate(String digest);
+
+    @Query("SELECT b.mediaType FROM AvatarBlob b WHERE b.digest = :digest")
+    Optional<String> findMediaType(String digest);
+
+    @Query("SELECT b.digest FROM AvatarBlob b WHERE b.digest > :afterDigest ORDER BY b.digest")
+    List<String> findDigestsAfter(String afterDigest, Pageable pageable);
+}
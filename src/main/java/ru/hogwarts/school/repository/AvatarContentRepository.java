@@ -0,0 +1,13 @@
+package ru.hogwarts.school.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import ru.hogwarts.school.model.AvatarContent;
+
+import java.util.List;
+
+public interface AvatarContentRepository extends JpaRepository<AvatarContent, String> {
+    @Query("SELECT c.digest FROM AvatarContent c WHERE c.digest > :afterDigest ORDER BY c.digest")
+    List<String> findDigestsAfter(String afterDigest, Pageable pageable);
+}
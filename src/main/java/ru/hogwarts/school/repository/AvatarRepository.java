@@ -1,10 +1,54 @@
 package ru.hogwarts.school.repository;
 
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarMetadata;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface AvatarRepository extends JpaRepository<Avatar, Long> {
     Optional<Avatar> findByStudentId(Long studentId);
+
+    List<Avatar> findByStudentIdIn(Collection<Long> studentIds);
+
+    @Query("SELECT a.student.id FROM Avatar a")
+    List<Long> findAllStudentIds();
+
+    long countByDigest(String digest);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Avatar a SET a.filePath = :filePath WHERE a.digest = :digest")
+    int updateFilePathByDigest(String digest, String filePath);
+
+    /**
+     * Points avatars of the digest that still refer to a moved file at its new path.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Avatar a SET a.filePath = :newPath WHERE a.digest = :digest AND a.filePath = :oldPath")
+    int replaceFilePath(String digest, String oldPath, String newPath);
+
+    @Query("SELECT new ru.hogwarts.school.model.AvatarMetadata(a.id, a.student.id, a.filePath, a.fileSize, a.mediaType, a.digest, " +
+            "a.updatedAt, COALESCE(b.optimized, false)) FROM Avatar a LEFT JOIN AvatarBlob b ON b.digest = a.digest WHERE a.id > :afterId ORDER BY a.id")
+    List<AvatarMetadata> findMetadataAfter(long afterId, Pageable pageable);
+
+    @Query("SELECT new ru.hogwarts.school.model.AvatarMetadata(a.id, a.student.id, a.filePath, a.fileSize, a.mediaType, a.digest, " +
+            "a.updatedAt, COALESCE(b.optimized, false)) FROM Avatar a LEFT JOIN AvatarBlob b ON b.digest = a.digest WHERE a.student.id = :studentId")
+    Optional<AvatarMetadata> findMetadataByStudentId(Long studentId);
+
+    @Query("SELECT new ru.hogwarts.school.model.AvatarMetadata(a.id, a.student.id, a.filePath, a.fileSize, a.mediaType, a.digest, " +
+            "a.updatedAt, COALESCE(b.optimized, false)) FROM Avatar a LEFT JOIN AvatarBlob b ON b.digest = a.digest WHERE a.student.id IN :studentIds")
+    List<AvatarMetadata> findMetadataByStudentIdIn(Collection<Long> studentIds);
+
+    @Query(value = "SELECT new ru.hogwarts.school.model.AvatarMetadata(a.id, a.student.id, a.filePath, a.fileSize, a.mediaType, a.digest, " +
+            "a.updatedAt, COALESCE(b.optimized, false)) FROM Avatar a LEFT JOIN AvatarBlob b ON b.digest = a.digest",
+            countQuery = "SELECT COUNT(a) FROM Avatar a")
+    Page<AvatarMetadata> findAllMetadata(Pageable pageable);
 }
@@ -0,0 +1,26 @@
+package ru.hogwarts.school.repository;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Adds the HQL function {@code c_collate(text)}: the text in the {@code "C"} collation on PostgreSQL, where
+ * the name prefix query and its index compare by byte, and the text unchanged on other databases. Unlike
+ * {@code sql()} it keeps the string type, so the result can be used with {@code LIKE}.
+ */
+public class CollationFunctionContributor implements FunctionContributor {
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        String pattern = functionContributions.getDialect() instanceof PostgreSQLDialect
+                ? "(?1 COLLATE \"C\")"
+                : "?1";
+
+        functionContributions.getFunctionRegistry().registerPattern(
+                "c_collate",
+                pattern,
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.STRING)
+        );
+    }
+}
@@ -1,10 +1,31 @@
 package ru.hogwarts.school.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import ru.hogwarts.school.model.Faculty;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface FacultyRepository extends JpaRepository<Faculty, Long> {
     List<Faculty> findByNameOrColorIgnoreCase(String name, String color);
+
+    @Query("SELECT f FROM Faculty f WHERE f.id > :afterId ORDER BY f.id")
+    List<Faculty> findPageById(long afterId, Pageable pageable);
+
+    @Query("SELECT f FROM Faculty f " +
+            "WHERE (f.name, f.id) > (:afterName, :afterId) " +
+            "ORDER BY f.name, f.id")
+    List<Faculty> findPageByName(String afterName, long afterId, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = StudentRepository.EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Faculty f ORDER BY f.id")
+    Stream<Faculty> streamAll();
 }
@@ -1,13 +1,50 @@
 package ru.hogwarts.school.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.model.StudentAgeStats;
+import ru.hogwarts.school.model.StudentNameEntry;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface StudentRepository extends JpaRepository<Student, Long> {
+    /**
+     * Rows the JDBC driver fetches per round trip while streaming; without it the Postgres driver reads
+     * the whole result into memory before returning the first row.
+     */
+    String EXPORT_FETCH_SIZE = "500";
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s FROM Student s ORDER BY s.id")
+    Stream<Student> streamAll();
+
+    @Query("SELECT s FROM Student s WHERE s.id > :afterId ORDER BY s.id")
+    List<Student> findPageById(long afterId, Pageable pageable);
+
+    @Query("SELECT s FROM Student s " +
+            "WHERE (s.name, s.id) > (:afterName, :afterId) " +
+            "ORDER BY s.name, s.id")
+    List<Student> findPageByName(String afterName, long afterId, Pageable pageable);
+
+    @Query("SELECT s FROM Student s " +
+            "WHERE (s.age, s.id) > (:afterAge, :afterId) " +
+            "ORDER BY s.age, s.id")
+    List<Student> findPageByAge(int afterAge, long afterId, Pageable pageable);
+
+    @Query("SELECT s FROM Student s WHERE s.faculty.id = :facultyId AND s.id > :afterId ORDER BY s.id")
+    List<Student> findFacultyPage(long facultyId, long afterId, Pageable pageable);
+
     List<Student> findByAge(int age);
 
     List<Student> findByAgeBetween(int min, int max);
@@ -15,8 +52,21 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
     @Query(value = "SELECT COUNT(*) FROM student", nativeQuery = true)
     Long getStudentsCount();
 
-    @Query(value = "SELECT AVG(age) FROM student", nativeQuery = true)
-    int getAverageStudentsAge();
+    @Query("SELECT new ru.hogwarts.school.model.StudentAgeStats(COUNT(s), COALESCE(SUM(s.age), 0L), MIN(s.age), MAX(s.age)) FROM Student s")
+    StudentAgeStats getAgeStats();
+
+    // Compared in the "C" collation (see CollationFunctionContributor), like its index and the in-memory name index.
+    @Query("SELECT new ru.hogwarts.school.model.StudentNameEntry(s.id, s.name) FROM Student s " +
+            "WHERE c_collate(lower(s.name)) LIKE :pattern ESCAPE '\\' " +
+            "AND (c_collate(lower(s.name)), s.id) > (:afterName, :afterId) " +
+            "ORDER BY c_collate(lower(s.name)), s.id")
+    List<StudentNameEntry> findByNamePrefix(String pattern, String afterName, long afterId, Pageable pageable);
+
+    @Query("SELECT new ru.hogwarts.school.model.StudentNameEntry(s.id, s.name) FROM Student s")
+    List<StudentNameEntry> findAllNames();
+
+    @Query("SELECT s.age FROM Student s WHERE s.id = :id")
+    Optional<Integer> findAgeById(long id);
 
     @Query(value = "SELECT * FROM student ORDER BY id DESC LIMIT 5", nativeQuery = true)
     List<Student> getLastStudentsInList();
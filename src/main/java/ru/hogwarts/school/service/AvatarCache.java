@@ -0,0 +1,178 @@
+package ru.hogwarts.school.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.AvatarCacheStats;
+import ru.hogwarts.school.model.AvatarMetadata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-memory cache in front of avatar lookups, backed by Caffeine (W-TinyLFU admission and eviction).
+ * Metadata is cached per student, invalidated on upload and delete, and expires after
+ * {@code avatar.cache.metadata-ttl-seconds} so changes made by other nodes or bulk loads show up. Content is cached per variant key;
+ * keys are content digests, so cached bytes never go stale and are bounded by their total size only.
+ * With {@code avatar.cache.off-heap} enabled the bytes are kept in direct buffers outside the Java heap
+ * and are written to responses from there, see {@link #contentBuffer}.
+ */
+@Component
+public class AvatarCache {
+    private final Cache<Long, AvatarMetadata> metadataCache;
+    private final Cache<String, String> mediaTypeCache;
+    private final Cache<String, ByteBuffer> contentCache;
+    private final boolean offHeap;
+    private volatile Map<String, ByteBuffer> pinned = Map.of();
+
+    public AvatarCache(
+            @Value("${avatar.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${avatar.cache.off-heap:false}") boolean offHeap,
+            @Value("${avatar.cache.metadata-entries:10000}") long metadataEntries,
+            @Value("${avatar.cache.metadata-ttl-seconds:300}") long metadataTtlSeconds
+    ) {
+        this.offHeap = offHeap;
+        this.metadataCache = Caffeine.newBuilder()
+                .maximumSize(metadataEntries)
+                .expireAfterWrite(Duration.ofSeconds(metadataTtlSeconds))
+                .build();
+        this.mediaTypeCache = Caffeine.newBuilder()
+                .maximumSize(metadataEntries)
+                .expireAfterWrite(Duration.ofSeconds(metadataTtlSeconds))
+                .build();
+        this.contentCache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, ByteBuffer content) -> content.capacity())
+                .recordStats()
+                .build();
+    }
+
+    public AvatarMetadata metadata(long studentId, Supplier<AvatarMetadata> loader) {
+        return metadataCache.get(studentId, key -> loader.get());
+    }
+
+    /**
+     * Returns the cached metadata of the given students, loading all uncached ones with a single call.
+     * Students missing from the loaded map are left out of the result and are not cached.
+     */
+    public Map<Long, AvatarMetadata> metadata(
+            Collection<Long> studentIds,
+            Function<Set<? extends Long>, Map<Long, AvatarMetadata>> loader
+    ) {
+        return metadataCache.getAll(studentIds, loader);
+    }
+
+    /**
+     * Returns the media type of a content key. Unknown keys are not cached, so content stored
+     * after a miss is found on the next request.
+     */
+    public Optional<String> mediaType(String key, Supplier<Optional<String>> loader) {
+        String cached = mediaTypeCache.getIfPresent(key);
+
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<String> loaded = loader.get();
+        loaded.ifPresent(mediaType -> mediaTypeCache.put(key, mediaType));
+
+        return loaded;
+    }
+
+    /**
+     * Returns a copy of the content as a byte array.
+     * Callers that only send the content on should use {@link #contentBuffer} instead.
+     */
+    public byte[] content(String key, ContentLoader loader) throws IOException {
+        return toByteArray(lookup(key, loader));
+    }
+
+    /**
+     * Returns a read-only view of the cached content, so off-heap content is sent without a copy on the heap.
+     */
+    public ByteBuffer contentBuffer(String key, ContentLoader loader) throws IOException {
+        return lookup(key, loader).asReadOnlyBuffer();
+    }
+
+    /**
+     * Replaces the pinned content: pinned entries are served before the size-bounded cache and are never
+     * evicted, so the hottest avatars cannot be pushed out by a burst of cold ones.
+     */
+    public void pin(Map<String, byte[]> content) {
+        Map<String, ByteBuffer> buffers = new HashMap<>();
+        content.forEach((key, data) -> buffers.put(key, toBuffer(data)));
+
+        pinned = Map.copyOf(buffers);
+    }
+
+    public void invalidate(long studentId) {
+        metadataCache.invalidate(studentId);
+    }
+
+    public AvatarCacheStats stats() {
+        CacheStats stats = contentCache.stats();
+
+        return new AvatarCacheStats(
+                stats.hitRate(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.evictionWeight(),
+                contentCache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L),
+                contentCache.estimatedSize(),
+                pinned.size(),
+                offHeap
+        );
+    }
+
+    private ByteBuffer lookup(String key, ContentLoader loader) throws IOException {
+        ByteBuffer pinnedContent = pinned.get(key);
+
+        if (pinnedContent != null) {
+            return pinnedContent;
+        }
+
+        // Concurrent misses on a key wait for one load instead of reading the same blob each.
+        try {
+            return contentCache.get(key, missing -> {
+                try {
+                    return toBuffer(loader.load());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ByteBuffer toBuffer(byte[] data) {
+        return offHeap ? ByteBuffer.allocateDirect(data.length).put(data).flip() : ByteBuffer.wrap(data);
+    }
+
+    /**
+     * Copies the content, so a caller changing the array cannot change what later readers are served.
+     */
+    private byte[] toByteArray(ByteBuffer content) {
+        byte[] data = new byte[content.capacity()];
+        content.duplicate().get(data);
+
+        return data;
+    }
+
+    @FunctionalInterface
+    public interface ContentLoader {
+        byte[] load() throws IOException;
+    }
+}
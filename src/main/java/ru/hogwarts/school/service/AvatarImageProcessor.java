@@ -0,0 +1,270 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
+import ru.hogwarts.school.storage.AvatarStore;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Produces derived avatar images (thumbnails) on a small bounded pool, away from request threads.
+ * When the queue is full the task is dropped; the preview endpoint serves the original meanwhile
+ * and schedules the task again on a later request.
+ * <p>
+ * With {@code avatar.optimize.enabled} the same task also stores an optimized rendition: re-encoded to
+ * the configured format and quality, capped in dimensions and without metadata (ImageIO writes none).
+ * It is only kept when it is smaller than the original.
+ */
+@Component
+public class AvatarImageProcessor {
+    private final AvatarStore avatarStore;
+    private final AvatarBlobRepository avatarBlobRepository;
+    private final List<Integer> thumbnailSizes;
+    private final boolean optimize;
+    private final String optimizedFormat;
+    private final float optimizedQuality;
+    private final int optimizedMaxDimension;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarImageProcessor.class);
+
+    public AvatarImageProcessor(
+            AvatarStore avatarStore,
+            AvatarBlobRepository avatarBlobRepository,
+            @Value("${avatar.thumbnail.sizes:64,128}") List<Integer> thumbnailSizes,
+            @Value("${avatar.thumbnail.threads:2}") int threads,
+            @Value("${avatar.thumbnail.queue-capacity:100}") int queueCapacity,
+            @Value("${avatar.optimize.enabled:false}") boolean optimize,
+            @Value("${avatar.optimize.format:jpeg}") String optimizedFormat,
+            @Value("${avatar.optimize.quality:0.8}") float optimizedQuality,
+            @Value("${avatar.optimize.max-dimension:512}") int optimizedMaxDimension
+    ) {
+        this.avatarStore = avatarStore;
+        this.avatarBlobRepository = avatarBlobRepository;
+        this.thumbnailSizes = thumbnailSizes.stream().sorted().toList();
+        this.optimize = optimize;
+        this.optimizedFormat = optimizedFormat;
+        this.optimizedQuality = optimizedQuality;
+        this.optimizedMaxDimension = optimizedMaxDimension;
+
+        if (optimize && !ImageIO.getImageWritersByFormatName(optimizedFormat).hasNext()) {
+            throw new IllegalArgumentException("No image writer for avatar format: " + optimizedFormat);
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "avatar-image-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * Returns the smallest configured thumbnail size that is not smaller than the requested one.
+     */
+    public Optional<Integer> fitThumbnailSize(int requestedSize) {
+        return thumbnailSizes.stream().filter(size -> size >= requestedSize).findFirst();
+    }
+
+    public List<Integer> thumbnailSizes() {
+        return thumbnailSizes;
+    }
+
+    public String thumbnailKey(String digest, int size) {
+        return digest + "-" + size;
+    }
+
+    public String thumbnailMediaType(String mediaType) {
+        return "png".equals(thumbnailFormat(mediaType)) ? "image/png" : "image/jpeg";
+    }
+
+    public boolean isOptimizing() {
+        return optimize;
+    }
+
+    public String optimizedKey(String digest) {
+        return digest + "-opt";
+    }
+
+    public String optimizedMediaType() {
+        return ImageIO.getImageWritersByFormatName(optimizedFormat).next().getOriginatingProvider().getMIMETypes()[0];
+    }
+
+    public void scheduleThumbnails(String digest, String mediaType, byte[] data) {
+        schedule(digest, () -> generateThumbnails(digest, mediaType, data));
+    }
+
+    /**
+     * Schedules the thumbnails of content that is only kept in the store, such as a streamed upload;
+     * the content is read there by the pool rather than by the caller.
+     */
+    public void scheduleThumbnails(String digest, String mediaType) {
+        schedule(digest, () -> {
+            Optional<byte[]> data = avatarStore.read(digest);
+
+            if (data.isEmpty()) {
+                logger.warn("Avatar blob {} is no longer stored, skipping thumbnails", digest);
+
+                return;
+            }
+
+            generateThumbnails(digest, mediaType, data.get());
+        });
+    }
+
+    private void schedule(String digest, ImageTask task) {
+        if (!pending.add(digest)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Could not generate thumbnails for avatar blob {}", digest, e);
+                } finally {
+                    pending.remove(digest);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(digest);
+            logger.warn("Avatar image queue is full, thumbnails for blob {} are postponed", digest);
+        }
+    }
+
+    public void deleteThumbnails(String digest) throws IOException {
+        for (int size : thumbnailSizes) {
+            avatarStore.delete(thumbnailKey(digest, size));
+        }
+
+        avatarStore.delete(optimizedKey(digest));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void generateThumbnails(String digest, String mediaType, byte[] data) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(data));
+
+        if (source == null) {
+            logger.warn("Avatar blob {} of type {} is not a readable image, skipping thumbnails", digest, mediaType);
+
+            return;
+        }
+
+        String format = thumbnailFormat(mediaType);
+
+        for (int size : thumbnailSizes) {
+            ByteArrayOutputStream thumbnail = new ByteArrayOutputStream();
+            ImageIO.write(scale(source, size, format), format, thumbnail);
+
+            avatarStore.write(thumbnailKey(digest, size), thumbnail.toByteArray());
+        }
+
+        logger.debug("Generated {} thumbnails for avatar blob {}", thumbnailSizes.size(), digest);
+
+        if (optimize) {
+            generateOptimized(digest, source, data.length);
+        }
+    }
+
+    private void generateOptimized(String digest, BufferedImage source, int originalSize) throws IOException {
+        BufferedImage image = scale(source, optimizedMaxDimension, optimizedFormat);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(optimizedFormat).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+
+            if (param.getCompressionType() == null) {
+                param.setCompressionType(param.getCompressionTypes()[0]);
+            }
+
+            param.setCompressionQuality(optimizedQuality);
+        }
+
+        ByteArrayOutputStream optimized = new ByteArrayOutputStream();
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(optimized)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+
+        if (optimized.size() >= originalSize) {
+            logger.debug("Optimized rendition of avatar blob {} is not smaller than the original, skipping it", digest);
+
+            return;
+        }
+
+        avatarStore.write(optimizedKey(digest), optimized.toByteArray());
+        avatarBlobRepository.markOptimized(digest);
+        logger.debug("Optimized avatar blob {} from {} to {} bytes", digest, originalSize, optimized.size());
+    }
+
+    private BufferedImage scale(BufferedImage source, int size, String format) {
+        double ratio = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        boolean opaque = "jpg".equals(format) || "jpeg".equals(format);
+
+        BufferedImage thumbnail = new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+
+        try {
+            if (opaque) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return thumbnail;
+    }
+
+    private String thumbnailFormat(String mediaType) {
+        return "image/png".equals(mediaType) || "image/gif".equals(mediaType) ? "png" : "jpg";
+    }
+
+    @FunctionalInterface
+    private interface ImageTask {
+        void run() throws IOException;
+    }
+}
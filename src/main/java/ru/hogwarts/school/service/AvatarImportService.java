@@ -0,0 +1,230 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import ru.hogwarts.school.model.AvatarImportEntry;
+import ru.hogwarts.school.model.AvatarImportResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports avatars from a ZIP archive of {@code {studentId}.{extension}} entries.
+ * <p>
+ * The archive is streamed once; every entry is size-checked and hashed while it is read, so oversized
+ * entries are rejected without being buffered. Accepted entries are grouped into batches that a bounded
+ * pool stores in parallel, one transaction per batch. When the pool is busy the reading thread stores the
+ * batch itself, which keeps the number of buffered avatars bounded.
+ */
+@Service
+public class AvatarImportService {
+    private final AvatarService avatarService;
+    private final AvatarUploadLimits avatarUploadLimits;
+    private final int batchSize;
+    private final ThreadPoolExecutor executor;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarImportService.class);
+
+    private static final int READ_CHUNK_SIZE = 8192;
+
+    public AvatarImportService(
+            AvatarService avatarService,
+            AvatarUploadLimits avatarUploadLimits,
+            @Value("${avatar.import.threads:4}") int threads,
+            @Value("${avatar.import.batch-size:20}") int batchSize
+    ) {
+        this.avatarService = avatarService;
+        this.avatarUploadLimits = avatarUploadLimits;
+        this.batchSize = batchSize;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "avatar-import-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    public List<AvatarImportResult> importArchive(InputStream archive) throws IOException {
+        logger.info("Was invoked method to import avatars from archive");
+
+        List<AvatarImportResult> results = new ArrayList<>();
+        List<Future<List<AvatarImportResult>>> batches = new ArrayList<>();
+        List<AvatarImportEntry> batch = new ArrayList<>(batchSize);
+
+        try (ZipInputStream zip = new ZipInputStream(archive)) {
+            ZipEntry zipEntry;
+
+            while ((zipEntry = zip.getNextEntry()) != null) {
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+
+                readEntry(zipEntry, zip, results).ifPresent(batch::add);
+
+                if (batch.size() == batchSize) {
+                    batches.add(submit(batch));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(submit(batch));
+        }
+
+        for (Future<List<AvatarImportResult>> future : batches) {
+            results.addAll(await(future));
+        }
+
+        logger.info("Imported {} of {} avatar archive entries", results.stream()
+                .filter(result -> result.status() == AvatarImportResult.Status.IMPORTED)
+                .count(), results.size());
+
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads the current archive entry, or records why it was rejected.
+     */
+    private Optional<AvatarImportEntry> readEntry(
+            ZipEntry zipEntry,
+            InputStream zip,
+            List<AvatarImportResult> rejected
+    ) throws IOException {
+        String name = zipEntry.getName();
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        int extensionStart = fileName.lastIndexOf('.');
+        long studentId;
+
+        try {
+            studentId = Long.parseLong(extensionStart > 0 ? fileName.substring(0, extensionStart) : fileName);
+        } catch (NumberFormatException e) {
+            rejected.add(AvatarImportResult.rejected(name, null, "File name must be {studentId}.{extension}"));
+
+            return Optional.empty();
+        }
+
+        Optional<MediaType> mediaType = MediaTypeFactory.getMediaType(fileName)
+                .filter(type -> avatarUploadLimits.isSupported(type.toString()));
+
+        if (mediaType.isEmpty()) {
+            rejected.add(AvatarImportResult.rejected(name, studentId, "Unsupported file type"));
+
+            return Optional.empty();
+        }
+
+        long maxSize = avatarUploadLimits.maxSize(mediaType.get().toString());
+
+        if (zipEntry.getSize() > maxSize) {
+            rejected.add(AvatarImportResult.rejected(name, studentId, "File is too big"));
+
+            return Optional.empty();
+        }
+
+        MessageDigest messageDigest = createMessageDigest();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_CHUNK_SIZE];
+        int read;
+
+        // The declared size may be missing or wrong, so the limit is enforced on what is actually inflated.
+        while ((read = zip.read(buffer)) != -1) {
+            if (data.size() + read > maxSize) {
+                rejected.add(AvatarImportResult.rejected(name, studentId, "File is too big"));
+
+                return Optional.empty();
+            }
+
+            messageDigest.update(buffer, 0, read);
+            data.write(buffer, 0, read);
+        }
+
+        return Optional.of(new AvatarImportEntry(
+                name,
+                studentId,
+                mediaType.get().toString(),
+                HexFormat.of().formatHex(messageDigest.digest()),
+                data.toByteArray()
+        ));
+    }
+
+    private Future<List<AvatarImportResult>> submit(List<AvatarImportEntry> batch) {
+        return executor.submit(() -> importBatch(batch));
+    }
+
+    /**
+     * Stores a batch in one transaction. If the batch fails as a whole (for example, two parallel batches
+     * racing on the same new blob), its entries are retried one at a time so a single bad entry only
+     * fails itself.
+     */
+    private List<AvatarImportResult> importBatch(List<AvatarImportEntry> batch) {
+        try {
+            return avatarService.importAvatars(batch);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Avatar import batch of {} entries failed, retrying entries one by one", batch.size(), e);
+        }
+
+        List<AvatarImportResult> results = new ArrayList<>(batch.size());
+
+        for (AvatarImportEntry entry : batch) {
+            try {
+                results.addAll(avatarService.importAvatars(List.of(entry)));
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not import avatar archive entry {}", entry.name(), e);
+                results.add(AvatarImportResult.failed(entry.name(), entry.studentId(), e.getMessage()));
+            }
+        }
+
+        return results;
+    }
+
+    private static List<AvatarImportResult> await(Future<List<AvatarImportResult>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Avatar import was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Avatar import batch failed", e.getCause());
+        }
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.hogwarts.school.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Moves avatar content that still lives in files written before the avatar store existed into the configured
+ * store: blobs whose content is only in a {@code {studentId}.{ext}} or {@code {digest}.{ext}} file, and avatars
+ * without a digest that point at their own file. Until then only a database copy, if any, can serve them.
+ * Runs when the application is launched with {@code --migrate-legacy-avatar-files}, on a background thread,
+ * one avatar per transaction; already moved content is skipped, so the run can be repeated.
+ */
+@Component
+public class AvatarLegacyMigration implements ApplicationRunner {
+    private static final String OPTION = "migrate-legacy-avatar-files";
+
+    private final AvatarService avatarService;
+    private final AvatarBlobRepository avatarBlobRepository;
+    private final AvatarRepository avatarRepository;
+    private final int batchSize;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarLegacyMigration.class);
+
+    public AvatarLegacyMigration(
+            AvatarService avatarService,
+            AvatarBlobRepository avatarBlobRepository,
+            AvatarRepository avatarRepository,
+            @Value("${avatar.store.filesystem.migration-batch-size:500}") int batchSize
+    ) {
+        this.avatarService = avatarService;
+        this.avatarBlobRepository = avatarBlobRepository;
+        this.avatarRepository = avatarRepository;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+
+        Thread thread = new Thread(this::migrate, "avatar-legacy-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void migrate() {
+        logger.info("Moving legacy avatar files into the avatar store");
+        long startedAt = System.nanoTime();
+        long blobs = 0;
+        long avatars = 0;
+
+        try {
+            String digestCursor = "";
+            List<String> digests;
+
+            do {
+                digests = avatarBlobRepository.findDigestsAfter(digestCursor, PageRequest.of(0, batchSize));
+
+                for (String digest : digests) {
+                    if (avatarService.migrateLegacyBlob(digest)) {
+                        blobs++;
+                    }
+
+                    digestCursor = digest;
+                }
+            } while (digests.size() == batchSize);
+
+            long avatarCursor = 0;
+            List<AvatarMetadata> page;
+
+            do {
+                page = avatarRepository.findMetadataAfter(avatarCursor, PageRequest.of(0, batchSize));
+
+                for (AvatarMetadata avatar : page) {
+                    if (avatar.digest() == null && avatarService.migrateLegacyAvatar(avatar.id())) {
+                        avatars++;
+                    }
+
+                    avatarCursor = avatar.id();
+                }
+            } while (page.size() == batchSize);
+
+            logger.info("Moved {} legacy blobs and {} legacy avatars into the avatar store in {} ms",
+                    blobs, avatars, (System.nanoTime() - startedAt) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Legacy avatar migration stopped after {} blobs and {} avatars, run it again to resume",
+                    blobs, avatars, e);
+        }
+    }
+}
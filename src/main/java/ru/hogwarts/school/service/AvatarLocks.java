@@ -0,0 +1,75 @@
+package ru.hogwarts.school.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Striped locks that serialize avatar changes of the same student while changes of different students
+ * (almost always on different stripes) proceed in parallel. A lock is held until the surrounding
+ * transaction completes, so the next writer of the same student sees the committed row.
+ */
+@Component
+public class AvatarLocks {
+    private final ReentrantLock[] stripes;
+
+    public AvatarLocks(@Value("${avatar.lock.stripes:64}") int stripes) {
+        // A power of two, so a stripe is picked with a mask.
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+
+        this.stripes = new ReentrantLock[size];
+
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks the stripes of the given students until the current transaction commits or rolls back.
+     * Stripes are always taken in ascending order, so batches locking several students cannot deadlock.
+     */
+    public void lockUntilCompletion(Collection<Long> studentIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Avatar locks must be taken inside a transaction");
+        }
+
+        int[] indexes = studentIds.stream().mapToInt(this::stripeIndex).distinct().sorted().toArray();
+
+        for (int i = 0; i < indexes.length; i++) {
+            try {
+                stripes[indexes[i]].lockInterruptibly();
+            } catch (InterruptedException e) {
+                unlock(indexes, i);
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException("Interrupted while waiting for an avatar lock", e);
+            }
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(indexes, indexes.length);
+            }
+        });
+    }
+
+    int stripeIndex(long studentId) {
+        int hash = Long.hashCode(studentId);
+
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    boolean isLocked(long studentId) {
+        return stripes[stripeIndex(studentId)].isLocked();
+    }
+
+    private void unlock(int[] indexes, int count) {
+        IntStream.range(0, count).map(i -> indexes[count - 1 - i]).forEach(index -> stripes[index].unlock());
+    }
+}
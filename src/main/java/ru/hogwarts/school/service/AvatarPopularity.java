@@ -0,0 +1,188 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.AvatarPopularityEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks which avatars are downloaded most. Every download increments a count-min sketch of lock-free
+ * counters; students whose estimate beats the coldest tracked one enter a small top-k table. Once the
+ * sketch has seen ten times its width in downloads all counts are halved, so old popularity fades.
+ * <p>
+ * The top-k table is written to a snapshot file on shutdown and read back on startup, so the next
+ * instance knows the hot avatars before its first request.
+ */
+@Component
+public class AvatarPopularity {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x97CB3127L, 0xA3E5F1B9L, 0x5BD1E995L, 0xC2B2AE35L};
+
+    private final int width;
+    private final AtomicLongArray counters;
+    private final AtomicLong samples = new AtomicLong();
+    private final long agingThreshold;
+    private final int topSize;
+    private final Map<Long, Long> top = new ConcurrentHashMap<>();
+    private final Path snapshot;
+
+    /**
+     * Estimate a student needs to enter a full top-k table; refreshed whenever an entry is replaced.
+     */
+    private volatile long admissionThreshold;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarPopularity.class);
+
+    public AvatarPopularity(
+            @Value("${avatar.popularity.width:16384}") int width,
+            @Value("${avatar.popularity.top-size:100}") int topSize,
+            @Value("${avatar.popularity.snapshot:./src/main/resources/images/popular-avatars.txt}") String snapshot
+    ) {
+        this.width = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.counters = new AtomicLongArray(DEPTH * this.width);
+        this.agingThreshold = 10L * this.width;
+        this.topSize = topSize;
+        this.snapshot = Path.of(snapshot);
+
+        loadSnapshot();
+    }
+
+    public void record(long studentId) {
+        add(studentId, 1);
+    }
+
+    public long estimate(long studentId) {
+        long estimate = Long.MAX_VALUE;
+
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(studentId, row)));
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Returns up to {@code limit} of the most downloaded students, hottest first.
+     */
+    public List<AvatarPopularityEntry> top(int limit) {
+        return top.entrySet().stream()
+                .map(entry -> new AvatarPopularityEntry(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparingLong(AvatarPopularityEntry::estimatedDownloads).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    @PreDestroy
+    public void saveSnapshot() {
+        List<String> lines = top(topSize).stream()
+                .map(entry -> entry.studentId() + " " + entry.estimatedDownloads())
+                .toList();
+
+        try {
+            Files.createDirectories(snapshot.toAbsolutePath().getParent());
+            Files.write(snapshot, lines);
+        } catch (IOException e) {
+            logger.warn("Could not save popular avatars to {}", snapshot, e);
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!Files.exists(snapshot)) {
+            return;
+        }
+
+        try {
+            for (String line : Files.readAllLines(snapshot)) {
+                String[] parts = line.trim().split(" ");
+
+                if (parts.length == 2) {
+                    add(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                }
+            }
+
+            logger.info("Loaded {} popular avatars from {}", top.size(), snapshot);
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Could not load popular avatars from {}", snapshot, e);
+        }
+    }
+
+    private void add(long studentId, long count) {
+        long estimate = Long.MAX_VALUE;
+
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(studentId, row), count));
+        }
+
+        offer(studentId, estimate);
+
+        if (samples.addAndGet(count) >= agingThreshold) {
+            age();
+        }
+    }
+
+    private void offer(long studentId, long estimate) {
+        if (top.computeIfPresent(studentId, (id, previous) -> Math.max(previous, estimate)) != null) {
+            return;
+        }
+
+        // Rejects most downloads without taking the lock; the decision itself is made under it.
+        if (top.size() >= topSize && estimate <= admissionThreshold) {
+            return;
+        }
+
+        synchronized (top) {
+            if (top.computeIfPresent(studentId, (id, previous) -> Math.max(previous, estimate)) != null) {
+                return;
+            }
+
+            if (top.size() < topSize) {
+                top.put(studentId, estimate);
+            } else {
+                top.entrySet().stream()
+                        .min(Map.Entry.comparingByValue())
+                        .filter(coldest -> coldest.getValue() < estimate)
+                        .ifPresent(coldest -> {
+                            top.remove(coldest.getKey());
+                            top.put(studentId, estimate);
+                        });
+            }
+
+            if (top.size() >= topSize) {
+                admissionThreshold = top.values().stream().mapToLong(Long::longValue).min().orElse(0);
+            }
+        }
+    }
+
+    private synchronized void age() {
+        if (samples.get() < agingThreshold) {
+            return;
+        }
+
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, value -> value >>> 1);
+        }
+
+        top.replaceAll((id, value) -> value >>> 1);
+        admissionThreshold >>>= 1;
+        samples.set(samples.get() >>> 1);
+    }
+
+    private int index(long studentId, int row) {
+        long hash = (studentId ^ SEEDS[row]) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 31;
+
+        return row * width + (int) (hash & (width - 1));
+    }
+}
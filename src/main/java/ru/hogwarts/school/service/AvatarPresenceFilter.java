@@ -0,0 +1,131 @@
+package ru.hogwarts.school.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Bloom filter of the ids of students that have an avatar. A negative answer is definite, so lookups for
+ * students without an avatar can be answered without a query. Deleted avatars keep their bits until the
+ * next rebuild and only cost a query, like any other false positive.
+ * <p>
+ * Uploads through this instance are added as they commit. Avatars written elsewhere (another node, a bulk
+ * load) are picked up by the periodic rebuild, see {@link AvatarPresenceRefresher}. Until the first
+ * {@link #rebuild} completes, and after a failed one, the filter answers "maybe" for every student. Ids added
+ * while the scan runs are replayed into the rebuilt filter, so an upload racing the scan is not lost.
+ */
+@Component
+public class AvatarPresenceFilter {
+    private final int bitCount;
+    private final int hashCount;
+    private final Set<Long> pending = new HashSet<>();
+    private volatile AtomicLongArray bits;
+    private boolean rebuilding;
+
+    public AvatarPresenceFilter(
+            @Value("${avatar.presence.expected-students:100000}") long expectedStudents,
+            @Value("${avatar.presence.false-positive-rate:0.01}") double falsePositiveRate
+    ) {
+        long optimalBits = (long) Math.ceil(-expectedStudents * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+
+        this.bitCount = (int) Math.min(Math.max(Long.SIZE, optimalBits), Integer.MAX_VALUE - Long.SIZE);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedStudents * Math.log(2)));
+    }
+
+    public boolean mightContain(long studentId) {
+        AtomicLongArray current = bits;
+
+        if (current == null) {
+            return true;
+        }
+
+        long hash = mix(studentId);
+
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(hash, i);
+
+            if ((current.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public synchronized void put(long studentId) {
+        if (bits == null || rebuilding) {
+            pending.add(studentId);
+        }
+
+        if (bits != null) {
+            set(bits, studentId);
+        }
+    }
+
+    /**
+     * Replaces the filter with one built from the loaded ids. If loading fails the filter falls back to
+     * answering "maybe" until a rebuild succeeds.
+     */
+    public void rebuild(Supplier<? extends Collection<Long>> studentIds) {
+        synchronized (this) {
+            rebuilding = true;
+        }
+
+        try {
+            AtomicLongArray next = new AtomicLongArray((bitCount + Long.SIZE - 1) / Long.SIZE);
+
+            studentIds.get().forEach(studentId -> set(next, studentId));
+
+            synchronized (this) {
+                pending.forEach(studentId -> set(next, studentId));
+                pending.clear();
+                bits = next;
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                bits = null;
+            }
+
+            throw e;
+        } finally {
+            synchronized (this) {
+                rebuilding = false;
+            }
+        }
+    }
+
+    private void set(AtomicLongArray target, long studentId) {
+        long hash = mix(studentId);
+
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(hash, i);
+            long mask = 1L << bit;
+
+            target.getAndUpdate(bit >>> 6, word -> word | mask);
+        }
+    }
+
+    /**
+     * Derives the i-th bit from two halves of one 64-bit hash (Kirsch-Mitzenmacher double hashing).
+     */
+    private int bitIndex(long hash, int i) {
+        int combined = (int) hash + i * (int) (hash >>> 32);
+
+        return (combined & Integer.MAX_VALUE) % bitCount;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+
+        return value;
+    }
+}
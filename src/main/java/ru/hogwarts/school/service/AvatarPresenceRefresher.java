@@ -0,0 +1,57 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the avatar presence filter once the application is ready and rebuilds it every
+ * {@code avatar.presence.rebuild-interval-seconds}, so avatars written by other instances, imports or
+ * COPY loads stop being answered as missing after at most one interval.
+ */
+@Component
+public class AvatarPresenceRefresher {
+    private final AvatarService avatarService;
+    private final long rebuildIntervalSeconds;
+    private final ScheduledExecutorService scheduler;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarPresenceRefresher.class);
+
+    public AvatarPresenceRefresher(
+            AvatarService avatarService,
+            @Value("${avatar.presence.rebuild-interval-seconds:60}") long rebuildIntervalSeconds
+    ) {
+        this.avatarService = avatarService;
+        this.rebuildIntervalSeconds = rebuildIntervalSeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avatar-presence");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                avatarService.rebuildPresenceFilter();
+            } catch (RuntimeException e) {
+                logger.warn("Could not rebuild avatar presence filter, answering maybe until the next rebuild", e);
+            }
+        }, 0, rebuildIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
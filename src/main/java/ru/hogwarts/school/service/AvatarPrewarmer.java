@@ -0,0 +1,101 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.exception.AvatarNotFoundException;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.model.AvatarPopularityEntry;
+import ru.hogwarts.school.model.AvatarVariant;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the most downloaded avatars into the cache when the application is ready and keeps them pinned,
+ * refreshing the pinned set periodically as popularity shifts. The renditions clients are actually served
+ * are pinned: the optimized one when it exists, and the thumbnails generated so far.
+ */
+@Component
+public class AvatarPrewarmer {
+    private final AvatarService avatarService;
+    private final AvatarPopularity avatarPopularity;
+    private final AvatarCache avatarCache;
+    private final int pinnedCount;
+    private final long refreshIntervalSeconds;
+    private final ScheduledExecutorService scheduler;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarPrewarmer.class);
+
+    public AvatarPrewarmer(
+            AvatarService avatarService,
+            AvatarPopularity avatarPopularity,
+            AvatarCache avatarCache,
+            @Value("${avatar.popularity.pinned:50}") int pinnedCount,
+            @Value("${avatar.popularity.pin-interval-seconds:300}") long refreshIntervalSeconds
+    ) {
+        this.avatarService = avatarService;
+        this.avatarPopularity = avatarPopularity;
+        this.avatarCache = avatarCache;
+        this.pinnedCount = pinnedCount;
+        this.refreshIntervalSeconds = refreshIntervalSeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avatar-prewarmer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::refreshPinned, 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void refreshPinned() {
+        List<Long> studentIds = avatarPopularity.top(pinnedCount).stream()
+                .map(AvatarPopularityEntry::studentId)
+                .toList();
+
+        if (studentIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            Map<String, byte[]> content = new HashMap<>();
+
+            for (AvatarMetadata avatar : avatarService.findAvatarMetadata(studentIds).values()) {
+                if (avatar.digest() == null) {
+                    continue;
+                }
+
+                for (AvatarVariant variant : avatarService.findServedVariants(avatar)) {
+                    try {
+                        content.put(variant.key(), avatarService.findAvatarData(avatar, variant));
+                    } catch (AvatarNotFoundException e) {
+                        logger.debug("Popular avatar of student {} has no stored rendition {}", avatar.studentId(), variant.key());
+                    }
+                }
+            }
+
+            avatarCache.pin(content);
+            logger.info("Pinned {} renditions of popular avatars in the cache", content.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not prewarm popular avatars", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.hogwarts.school.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import ru.hogwarts.school.storage.AvatarRegion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Sends a region of a local file. Tomcat hands the file to the kernel (sendfile) once the servlet returns;
+ * other containers fall back to transferTo. Cached content is sent straight from its buffer, which for
+ * off-heap entries avoids a copy of the whole avatar on the heap.
+ */
+public final class AvatarRegionWriter {
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private AvatarRegionWriter() {
+    }
+
+    public static void write(
+            AvatarRegion region,
+            long start,
+            long count,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        long position = region.offset() + start;
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, region.file().toRealPath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, position);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, position + count);
+
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(region.file(), READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+
+            while (count > 0) {
+                long transferred = channel.transferTo(position, count, out);
+
+                if (transferred <= 0) {
+                    break;
+                }
+
+                position += transferred;
+                count -= transferred;
+            }
+        }
+    }
+
+    public static void write(ByteBuffer content, OutputStream out) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+        ByteBuffer remaining = content.duplicate();
+
+        while (remaining.hasRemaining()) {
+            channel.write(remaining);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.model.AvatarScrubStats;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.AvatarStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Walks avatar blobs, stored content and avatar rows in small keyset-paginated chunks, one chunk of each
+ * per run, and repairs what drifted apart after crashes:
+ * <ul>
+ *     <li>blob rows are reconciled with the avatars referencing them, and unreferenced ones are removed;</li>
+ *     <li>stored content is read back and checked against its SHA-256 key, reads being throttled to
+ *     {@code avatar.scrub.max-bytes-per-second};</li>
+ *     <li>content without a blob row is removed once it has stayed orphaned for the grace period, which
+ *     leaves uploads that have written content but not committed yet alone;</li>
+ *     <li>avatar rows whose content is gone are reported, not deleted.</li>
+ * </ul>
+ * Every chunk uses its own short transactions, so no pass holds a transaction over the whole table.
+ */
+@Component
+public class AvatarScrubber {
+    private static final Pattern CONTENT_KEY = Pattern.compile("([0-9a-f]{64})(-\\d+|-opt)?");
+    private static final int MAX_ORPHAN_CANDIDATES = 100_000;
+
+    private final AvatarService avatarService;
+    private final AvatarStore avatarStore;
+    private final AvatarRepository avatarRepository;
+    private final AvatarBlobRepository avatarBlobRepository;
+    private final int chunkSize;
+    private final long intervalSeconds;
+    private final long maxBytesPerSecond;
+    private final Duration orphanGracePeriod;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Instant> orphanCandidates = new ConcurrentHashMap<>();
+    private String blobCursor = "";
+    private String contentCursor = "";
+    private long avatarCursor;
+
+    private final AtomicLong completedPasses = new AtomicLong();
+    private final AtomicLong blobsChecked = new AtomicLong();
+    private final AtomicLong missingContent = new AtomicLong();
+    private final AtomicLong checksumMismatches = new AtomicLong();
+    private final AtomicLong referencesFixed = new AtomicLong();
+    private final AtomicLong orphanBlobsRemoved = new AtomicLong();
+    private final AtomicLong orphanContentRemoved = new AtomicLong();
+    private final AtomicLong danglingAvatars = new AtomicLong();
+    private volatile Instant lastPassCompletedAt;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarScrubber.class);
+
+    public AvatarScrubber(
+            AvatarService avatarService,
+            AvatarStore avatarStore,
+            AvatarRepository avatarRepository,
+            AvatarBlobRepository avatarBlobRepository,
+            @Value("${avatar.scrub.chunk-size:100}") int chunkSize,
+            @Value("${avatar.scrub.interval-seconds:60}") long intervalSeconds,
+            @Value("${avatar.scrub.max-bytes-per-second:1048576}") long maxBytesPerSecond,
+            @Value("${avatar.scrub.orphan-grace-seconds:3600}") long orphanGraceSeconds
+    ) {
+        this.avatarService = avatarService;
+        this.avatarStore = avatarStore;
+        this.avatarRepository = avatarRepository;
+        this.avatarBlobRepository = avatarBlobRepository;
+        this.chunkSize = chunkSize;
+        this.intervalSeconds = intervalSeconds;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.orphanGracePeriod = Duration.ofSeconds(orphanGraceSeconds);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avatar-scrubber");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                scrubChunk();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Avatar scrubber run failed", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Checks the next chunk of blobs, stored content and avatar rows.
+     */
+    public synchronized void scrubChunk() throws IOException {
+        boolean blobsDone = scrubBlobs();
+        boolean contentDone = scrubContent();
+        boolean avatarsDone = scrubAvatars();
+
+        if (blobsDone && contentDone && avatarsDone) {
+            completedPasses.incrementAndGet();
+            lastPassCompletedAt = Instant.now();
+            logger.info("Avatar scrubber completed a pass: {}", getStats());
+        }
+    }
+
+    public AvatarScrubStats getStats() {
+        return new AvatarScrubStats(
+                completedPasses.get(),
+                blobsChecked.get(),
+                missingContent.get(),
+                checksumMismatches.get(),
+                referencesFixed.get(),
+                orphanBlobsRemoved.get(),
+                orphanContentRemoved.get(),
+                danglingAvatars.get(),
+                orphanCandidates.size(),
+                lastPassCompletedAt
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @return whether the walk over blobs wrapped around
+     */
+    private boolean scrubBlobs() throws IOException {
+        List<String> digests = avatarBlobRepository.findDigestsAfter(blobCursor, PageRequest.of(0, chunkSize));
+
+        for (String digest : digests) {
+            blobsChecked.incrementAndGet();
+
+            switch (avatarService.reconcileBlob(digest)) {
+                case ORPHAN_REMOVED -> orphanBlobsRemoved.incrementAndGet();
+                case REFERENCES_FIXED -> {
+                    referencesFixed.incrementAndGet();
+                    verifyContent(digest);
+                }
+                case CONSISTENT -> verifyContent(digest);
+                case MISSING -> {
+                }
+            }
+        }
+
+        blobCursor = digests.size() < chunkSize ? "" : digests.get(digests.size() - 1);
+
+        return blobCursor.isEmpty();
+    }
+
+    private boolean scrubContent() throws IOException {
+        List<String> keys = avatarStore.keys(contentCursor, chunkSize);
+        Instant now = Instant.now();
+
+        for (String key : keys) {
+            var matcher = CONTENT_KEY.matcher(key);
+
+            // Legacy files named after the student are referenced by their avatar row directly.
+            if (!matcher.matches() || avatarBlobRepository.existsById(matcher.group(1))) {
+                orphanCandidates.remove(key);
+
+                // Renditions stored before blobs recorded them are offered to downloads from now on.
+                if (matcher.matches() && "-opt".equals(matcher.group(2))) {
+                    avatarBlobRepository.markOptimized(matcher.group(1));
+                }
+
+                continue;
+            }
+
+            Instant firstSeen = orphanCandidates.get(key);
+
+            if (firstSeen == null) {
+                if (orphanCandidates.size() < MAX_ORPHAN_CANDIDATES) {
+                    orphanCandidates.put(key, now);
+                }
+            } else if (!now.isBefore(firstSeen.plus(orphanGracePeriod))) {
+                logger.warn("Removing avatar content {} that no blob references", key);
+
+                avatarStore.delete(key);
+                orphanCandidates.remove(key);
+                orphanContentRemoved.incrementAndGet();
+            }
+        }
+
+        contentCursor = keys.size() < chunkSize ? "" : keys.get(keys.size() - 1);
+
+        return contentCursor.isEmpty();
+    }
+
+    private boolean scrubAvatars() {
+        List<AvatarMetadata> avatars = avatarRepository.findMetadataAfter(avatarCursor, PageRequest.of(0, chunkSize));
+
+        for (AvatarMetadata avatar : avatars) {
+            boolean present = avatar.digest() == null
+                    ? avatar.filePath() != null && Files.exists(Path.of(avatar.filePath()))
+                    : avatarBlobRepository.existsById(avatar.digest());
+
+            if (!present) {
+                logger.warn("Avatar with id = {} of student {} has no stored content", avatar.id(), avatar.studentId());
+                danglingAvatars.incrementAndGet();
+            }
+        }
+
+        avatarCursor = avatars.size() < chunkSize ? 0 : avatars.get(avatars.size() - 1).id();
+
+        return avatarCursor == 0;
+    }
+
+    private void verifyContent(String digest) throws IOException {
+        Optional<byte[]> data = avatarStore.read(digest);
+
+        if (data.isEmpty()) {
+            logger.error("Content of avatar blob {} is missing", digest);
+            missingContent.incrementAndGet();
+
+            return;
+        }
+
+        if (!digest.equals(HexFormat.of().formatHex(createMessageDigest().digest(data.get())))) {
+            logger.error("Content of avatar blob {} does not match its checksum", digest);
+            checksumMismatches.incrementAndGet();
+        }
+
+        throttle(data.get().length);
+    }
+
+    private void throttle(long bytes) {
+        long pauseMillis = bytes * 1000 / maxBytesPerSecond;
+
+        if (pauseMillis <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
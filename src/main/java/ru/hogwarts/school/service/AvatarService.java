@@ -1,58 +1,122 @@
 package ru.hogwarts.school.service;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import ru.hogwarts.school.exception.AvatarNotAllowedBigFileSizeException;
+import ru.hogwarts.school.exception.AvatarNotFoundException;
 import ru.hogwarts.school.exception.StudentNotFoundException;
 import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarBlob;
+import ru.hogwarts.school.model.AvatarCacheStats;
+import ru.hogwarts.school.model.AvatarImportEntry;
+import ru.hogwarts.school.model.AvatarImportResult;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.model.AvatarPopularityEntry;
+import ru.hogwarts.school.model.AvatarVariant;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
 import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.AvatarRegion;
+import ru.hogwarts.school.storage.AvatarStore;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.Objects;
-
-import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Service
 @Transactional
 public class AvatarService {
     private final AvatarRepository avatarRepository;
+    private final AvatarBlobRepository avatarBlobRepository;
+    private final AvatarStore avatarStore;
+    private final AvatarImageProcessor avatarImageProcessor;
+    private final AvatarCache avatarCache;
+    private final AvatarLocks avatarLocks;
+    private final AvatarUploadLimits avatarUploadLimits;
+    private final AvatarPopularity avatarPopularity;
+    private final AvatarPresenceFilter avatarPresenceFilter;
     private final StudentService studentService;
 
     private static final Logger logger = LoggerFactory.getLogger(AvatarService.class);
 
-    @Value("${path.to.avatars.folder}")
-    private String avatarsDir;
+    private static final int UPLOAD_CHUNK_SIZE = 8192;
+    private static final int MAX_BLOB_ATTEMPTS = 3;
 
     @Autowired
-    public AvatarService(AvatarRepository avatarRepository, StudentService studentService) {
+    public AvatarService(
+            AvatarRepository avatarRepository,
+            AvatarBlobRepository avatarBlobRepository,
+            AvatarStore avatarStore,
+            AvatarImageProcessor avatarImageProcessor,
+            AvatarCache avatarCache,
+            AvatarLocks avatarLocks,
+            AvatarUploadLimits avatarUploadLimits,
+            AvatarPopularity avatarPopularity,
+            AvatarPresenceFilter avatarPresenceFilter,
+            StudentService studentService
+    ) {
         this.avatarRepository = avatarRepository;
+        this.avatarBlobRepository = avatarBlobRepository;
+        this.avatarStore = avatarStore;
+        this.avatarImageProcessor = avatarImageProcessor;
+        this.avatarCache = avatarCache;
+        this.avatarLocks = avatarLocks;
+        this.avatarUploadLimits = avatarUploadLimits;
+        this.avatarPopularity = avatarPopularity;
+        this.avatarPresenceFilter = avatarPresenceFilter;
         this.studentService = studentService;
     }
 
-    public List<Avatar> getAllAvatars(Integer pageNumber, Integer pageSize) {
+    public List<AvatarMetadata> getAllAvatars(Integer pageNumber, Integer pageSize) {
         PageRequest pageRequest = PageRequest.of(pageNumber - 1, pageSize);
         logger.info("Was invoked method to get all avatars");
 
-        return avatarRepository.findAll(pageRequest).getContent();
+        return avatarRepository.findAllMetadata(pageRequest).getContent();
+    }
+
+    /**
+     * Loads the ids of all students with an avatar into the presence filter.
+     */
+    public void rebuildPresenceFilter() {
+        logger.info("Was invoked method to rebuild avatar presence filter");
+
+        avatarPresenceFilter.rebuild(() -> {
+            List<Long> studentIds = avatarRepository.findAllStudentIds();
+
+            return studentIds == null ? List.<Long>of() : studentIds;
+        });
     }
 
     public Avatar findAvatar(long studentId) {
         logger.info("Was invoked method to find avatar by student id");
+        requirePossibleAvatar(studentId);
 
         return avatarRepository.findByStudentId(studentId).orElseThrow(() -> {
             logger.error("There is not avatar with student id = {}", studentId);
@@ -61,67 +125,766 @@ public class AvatarService {
         });
     }
 
-    public ResponseEntity<Resource> downloadAvatar(Long studentId) throws IOException {
-        Avatar avatar = findAvatar(studentId);
+    public AvatarMetadata findAvatarMetadata(long studentId) {
+        logger.info("Was invoked method to find avatar metadata by student id");
+        requirePossibleAvatar(studentId);
+
+        return avatarCache.metadata(studentId, () -> avatarRepository.findMetadataByStudentId(studentId).orElseThrow(() -> {
+            logger.error("There is not avatar with student id = {}", studentId);
+
+            return new StudentNotFoundException(studentId);
+        }));
+    }
+
+    public String findAvatarUrl(long studentId) {
+        AvatarMetadata avatar = findAvatarMetadata(studentId);
+        logger.info("Was invoked method to find avatar url by student id");
+
+        if (avatar.url() == null) {
+            logger.error("Avatar with id = {} has no content digest", avatar.id());
+
+            throw new AvatarNotFoundException(avatar.id());
+        }
+
+        return avatar.url();
+    }
+
+    /**
+     * Resolves the avatar metadata of several students at once: cached entries are used as they are
+     * and the rest is loaded with a single query. Students without an avatar are absent from the result.
+     */
+    public Map<Long, AvatarMetadata> findAvatarMetadata(Collection<Long> studentIds) {
+        logger.info("Was invoked method to find avatar metadata by {} student ids", studentIds.size());
+
+        List<Long> candidates = studentIds.stream().filter(avatarPresenceFilter::mightContain).toList();
+
+        return avatarCache.metadata(candidates, missing -> avatarRepository.findMetadataByStudentIdIn(List.copyOf(missing))
+                .stream()
+                .collect(Collectors.toMap(AvatarMetadata::studentId, Function.identity())));
+    }
+
+    /**
+     * Streams the original avatars of the given students as a ZIP archive of {@code {studentId}.{extension}}
+     * entries. Students without an avatar or without stored content do not fail the archive; they are listed
+     * one id per line in a trailing {@code missing.txt} entry.
+     * <p>
+     * The metadata is resolved beforehand with {@link #findAvatarMetadata(Collection)}; streaming runs outside
+     * a transaction, so a slow client does not keep one open for the whole archive.
+     */
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void writeAvatarArchive(
+            Collection<Long> studentIds,
+            Map<Long, AvatarMetadata> avatars,
+            OutputStream out
+    ) throws IOException {
+        logger.info("Was invoked method to download avatars as archive");
+
+        List<Long> missing = new ArrayList<>();
+
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Long studentId : new LinkedHashSet<>(studentIds)) {
+                AvatarMetadata avatar = avatars.get(studentId);
+                byte[] data;
+
+                try {
+                    data = avatar == null ? null : findAvatarData(avatar, avatar.original());
+                } catch (AvatarNotFoundException e) {
+                    data = null;
+                }
+
+                if (data == null) {
+                    missing.add(studentId);
+
+                    continue;
+                }
+
+                putStoredEntry(zip, studentId + "." + MediaType.parseMediaType(avatar.mediaType()).getSubtype(), data);
+            }
+
+            if (!missing.isEmpty()) {
+                String ids = missing.stream().map(String::valueOf).collect(Collectors.joining("\n", "", "\n"));
+                putStoredEntry(zip, "missing.txt", ids.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Picks the rendition served by the preview endpoint: the thumbnail fitting the requested size
+     * when it has been generated already, otherwise the full-size rendition negotiated from {@code Accept}.
+     */
+    public AvatarVariant findPreviewVariant(AvatarMetadata avatar, Integer size, String accept) throws IOException {
+        logger.info("Was invoked method to find avatar preview variant");
+        avatarPopularity.record(avatar.studentId());
+
+        if (size != null) {
+            Optional<Integer> thumbnailSize = avatarImageProcessor.fitThumbnailSize(size);
+
+            if (thumbnailSize.isPresent()) {
+                String key = avatarImageProcessor.thumbnailKey(avatar.digest(), thumbnailSize.get());
+
+                if (avatarStore.contains(key)) {
+                    return new AvatarVariant(key, avatarImageProcessor.thumbnailMediaType(avatar.mediaType()));
+                }
+
+                logger.debug("Thumbnail {} is not generated yet, serving the original", key);
+                avatarImageProcessor.scheduleThumbnails(avatar.digest(), avatar.mediaType(), findAvatarData(avatar, avatar.original()));
+            }
+        }
+
+        return negotiateVariant(avatar, accept);
+    }
+
+    /**
+     * Chooses between the original and the optimized rendition. The client's {@code Accept} header decides;
+     * when both are equally acceptable the optimized one wins, being smaller. Without an optimized rendition,
+     * as recorded on the blob, the original is served as before.
+     */
+    public AvatarVariant negotiateVariant(AvatarMetadata avatar, String accept) {
+        AvatarVariant original = avatar.original();
+
+        if (!avatarImageProcessor.isOptimizing() || avatar.digest() == null || !avatar.optimized()) {
+            return original;
+        }
+
+        String key = avatarImageProcessor.optimizedKey(avatar.digest());
+        AvatarVariant optimized = new AvatarVariant(key, avatarImageProcessor.optimizedMediaType());
+        List<MediaType> accepted;
+
+        try {
+            accepted = accept == null || accept.isBlank() ? List.of(MediaType.ALL) : MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            accepted = List.of(MediaType.ALL);
+        }
+
+        double optimizedQuality = acceptQuality(accepted, optimized.mediaType());
+
+        return optimizedQuality > 0 && optimizedQuality >= acceptQuality(accepted, original.mediaType()) ? optimized : original;
+    }
+
+    /**
+     * Renditions served for an avatar when nothing specific is asked for: the variant negotiated for a request
+     * without {@code Accept}, which is the optimized one when it exists, and every configured thumbnail.
+     */
+    public List<AvatarVariant> findServedVariants(AvatarMetadata avatar) {
+        List<AvatarVariant> variants = new ArrayList<>();
+        variants.add(negotiateVariant(avatar, null));
+
+        for (int size : avatarImageProcessor.thumbnailSizes()) {
+            variants.add(new AvatarVariant(
+                    avatarImageProcessor.thumbnailKey(avatar.digest(), size),
+                    avatarImageProcessor.thumbnailMediaType(avatar.mediaType())
+            ));
+        }
+
+        return variants;
+    }
+
+    public byte[] findAvatarData(AvatarMetadata avatar, AvatarVariant variant) throws IOException {
+        logger.info("Was invoked method to find avatar data by student id");
+
+        return avatarCache.content(variant.key(), () -> avatarStore.read(variant.key()).orElseThrow(() -> {
+            logger.error("There is no stored content {} for avatar with id = {}", variant.key(), avatar.id());
+
+            return new AvatarNotFoundException(avatar.id());
+        }));
+    }
+
+    /**
+     * Resolves the media type a content key is served under from the blob it belongs to, never from the URL:
+     * the original's stored type, the thumbnail type derived from it, or the optimized rendition's type.
+     * Content stored under a type that is no longer accepted for uploads is not served.
+     */
+    public Optional<String> findContentMediaType(String key) {
+        int suffix = key.indexOf('-');
+        String digest = suffix < 0 ? key : key.substring(0, suffix);
 
-        Path path = Path.of(avatar.getFilePath());
-        Resource resource = new UrlResource(path.toUri());
+        return avatarCache.mediaType(key, () -> avatarBlobRepository.findMediaType(digest)
+                .filter(avatarUploadLimits::isSupported)
+                .map(mediaType -> {
+                    if (suffix < 0) {
+                        return mediaType;
+                    }
+
+                    return key.endsWith("-opt")
+                            ? avatarImageProcessor.optimizedMediaType()
+                            : avatarImageProcessor.thumbnailMediaType(mediaType);
+                }));
+    }
+
+    /**
+     * Returns the content like {@link #findAvatarData}, as a read-only buffer that is not copied for sending.
+     */
+    public ByteBuffer findAvatarContent(AvatarMetadata avatar, AvatarVariant variant) throws IOException {
+        logger.info("Was invoked method to find avatar content by student id");
+
+        return avatarCache.contentBuffer(variant.key(), () -> avatarStore.read(variant.key()).orElseThrow(() -> {
+            logger.error("There is no stored content {} for avatar with id = {}", variant.key(), avatar.id());
+
+            return new AvatarNotFoundException(avatar.id());
+        }));
+    }
+
+    public AvatarCacheStats getCacheStats() {
+        logger.info("Was invoked method to get avatar cache statistics");
+
+        return avatarCache.stats();
+    }
+
+    public List<AvatarPopularityEntry> getPopularAvatars(int limit) {
+        logger.info("Was invoked method to get most downloaded avatars");
+
+        return avatarPopularity.top(limit);
+    }
+
+    /**
+     * Sends one avatar, honouring conditional and single range requests. The metadata is resolved beforehand
+     * with {@link #findAvatarMetadata(long)}; the body is written outside a transaction, so a slow client does
+     * not hold a database connection for the whole transfer.
+     */
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void downloadAvatar(AvatarMetadata avatar, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long studentId = avatar.studentId();
         logger.info("Was invoked method to download avatar by student id");
+        avatarPopularity.record(studentId);
+
+        AvatarVariant variant = negotiateVariant(avatar, request.getHeader(HttpHeaders.ACCEPT));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + resource.getFilename())
-                .contentType(MediaType.parseMediaType(avatar.getMediaType()))
-                .contentLength(avatar.getFileSize())
-                .body(resource);
+        if (new ServletWebRequest(request, response).checkNotModified(variant.eTag(), avatar.lastModified())) {
+            return;
+        }
+
+        Optional<AvatarRegion> region = locate(avatar, variant);
+        ByteBuffer content = region.isPresent() ? null : findAvatarContent(avatar, variant);
+        long length = region.map(AvatarRegion::length).orElseGet(() -> (long) content.remaining());
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=" + studentId + "." + MediaType.parseMediaType(variant.mediaType()).getSubtype());
+        response.setContentType(variant.mediaType());
+
+        long start = 0;
+        long end = length - 1;
+        List<HttpRange> ranges;
+
+        try {
+            String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+            boolean rangeApplies = ifRange == null || ifRange.equals(variant.eTag());
+            ranges = rangeApplies ? HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE)) : List.of();
+
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+            }
+        } catch (IllegalArgumentException e) {
+            logger.debug("Unsatisfiable range requested for avatar with student id = {}", studentId);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+            return;
+        }
+
+        // Several ranges would need a multipart/byteranges body, so such requests get the whole file instead.
+        if (ranges.size() == 1) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(start, end, length));
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (region.isPresent()) {
+            AvatarRegionWriter.write(region.get(), start, count, request, response);
+        } else {
+            AvatarRegionWriter.write(content.slice((int) start, (int) count), response.getOutputStream());
+        }
     }
 
-    public void uploadAvatar(Long studentId, MultipartFile avatarFile) throws IOException {
-        if (avatarFile.getSize() > 1024 * 300) {
+    /**
+     * @return the immutable URL of the uploaded content
+     */
+    public String uploadAvatar(Long studentId, MultipartFile avatarFile) throws IOException {
+        // Checked before anything is stored: the content is later served under this type.
+        String mediaType = avatarUploadLimits.requireSupported(avatarFile.getContentType()).toString();
+        long maxSize = avatarUploadLimits.maxSize(mediaType);
+
+        if (avatarFile.getSize() > maxSize) {
             logger.error("The avatar file size must not exceed big size");
 
-            throw new AvatarNotAllowedBigFileSizeException(avatarFile.getSize());
+            throw new AvatarNotAllowedBigFileSizeException(avatarFile.getSize(), maxSize);
         }
 
         logger.info("Was invoked method to upload avatar");
         Student student = studentService.findStudent(studentId);
-        Path filePath = Path.of(avatarsDir, student.getId() + "." + getExtensions(Objects.requireNonNull(avatarFile.getOriginalFilename())));
 
-        Files.createDirectories(filePath.getParent());
-        Files.deleteIfExists(filePath);
+        // The multipart body is read exactly once, hashed as it is copied to a temporary file that the
+        // avatar store then takes over, so the upload is never held in memory as a whole.
+        Path upload = Files.createTempFile("avatar-", ".upload");
+
+        try {
+            MessageDigest messageDigest = createMessageDigest();
+            long fileSize;
+
+            try (InputStream is = new DigestInputStream(avatarFile.getInputStream(), messageDigest);
+                 OutputStream os = Files.newOutputStream(upload)) {
+                fileSize = copyWithin(is, os, maxSize);
+            }
+
+            String digest = HexFormat.of().formatHex(messageDigest.digest());
 
-        try (
-                InputStream is = avatarFile.getInputStream();
-                OutputStream os = Files.newOutputStream(filePath, CREATE_NEW);
-                BufferedInputStream bis = new BufferedInputStream(is, 1024);
-                BufferedOutputStream bos = new BufferedOutputStream(os, 1024)
-        ) {
-            bis.transferTo(bos);
+            // Held until commit: a concurrent upload for the same student waits and then updates this row
+            // instead of inserting a second one.
+            avatarLocks.lockUntilCompletion(List.of(studentId));
+            Avatar avatar = avatarRepository.findByStudentId(studentId).orElseGet(Avatar::new);
+
+            storeAvatar(avatar, student, digest, fileSize, mediaType, new UploadedContent(upload));
+
+            return AvatarMetadata.staticUrl(digest, mediaType);
+        } finally {
+            Files.deleteIfExists(upload);
         }
+    }
 
-        Avatar avatar = avatarRepository.findById(studentId).orElseGet(Avatar::new);
+    /**
+     * Saves a batch of avatars from an import archive in the current transaction. Students and their
+     * current avatars are loaded with one query each; entries for unknown students are rejected
+     * without affecting the rest of the batch.
+     */
+    @Transactional(rollbackOn = IOException.class)
+    public List<AvatarImportResult> importAvatars(List<AvatarImportEntry> entries) throws IOException {
+        logger.info("Was invoked method to import a batch of {} avatars", entries.size());
 
-        avatar.setStudent(student);
-        avatar.setFilePath(filePath.toString());
-        avatar.setFileSize(avatarFile.getSize());
-        avatar.setMediaType(avatarFile.getContentType());
-        avatar.setData(avatarFile.getBytes());
+        Set<Long> studentIds = entries.stream().map(AvatarImportEntry::studentId).collect(Collectors.toSet());
+        avatarLocks.lockUntilCompletion(studentIds);
 
-        avatarRepository.save(avatar);
+        Map<Long, Student> students = studentService.findStudents(studentIds).stream()
+                .collect(Collectors.toMap(Student::getId, Function.identity()));
+        Map<Long, Avatar> avatars = avatarRepository.findByStudentIdIn(studentIds).stream()
+                .collect(Collectors.toMap(avatar -> avatar.getStudent().getId(), Function.identity()));
+
+        List<AvatarImportResult> results = new ArrayList<>(entries.size());
+
+        for (AvatarImportEntry entry : entries) {
+            Student student = students.get(entry.studentId());
+
+            if (student == null) {
+                results.add(AvatarImportResult.rejected(entry.name(), entry.studentId(), "Student not found"));
+
+                continue;
+            }
+
+            Avatar avatar = avatars.computeIfAbsent(entry.studentId(), id -> new Avatar());
+            storeAvatar(avatar, student, entry.digest(), entry.data().length, entry.mediaType(), new LoadedContent(entry.data()));
+            results.add(AvatarImportResult.imported(entry.name(), entry.studentId()));
+        }
+
+        return results;
     }
 
     public void deleteAvatar(long studentId) throws IOException {
+        avatarLocks.lockUntilCompletion(List.of(studentId));
         Avatar avatar = findAvatar(studentId);
-        Path filePath = Path.of(avatar.getFilePath());
-
-        Files.deleteIfExists(filePath);
         logger.info("Was invoked method to delete avatar from db");
 
         avatarRepository.deleteById(avatar.getId());
+        runAfterCommit(() -> avatarCache.invalidate(studentId));
+
+        if (avatar.getDigest() != null) {
+            releaseBlob(avatar.getDigest());
+        } else {
+            runAfterCommit(() -> {
+                try {
+                    Files.deleteIfExists(Path.of(avatar.getFilePath()));
+                } catch (IOException e) {
+                    logger.warn("Could not delete legacy avatar file {}", avatar.getFilePath(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves the content of a blob that is only kept in a file outside the avatar store, as written before
+     * content was stored by digest ({@code {studentId}.{ext}} or {@code {digest}.{ext}} in the avatars folder),
+     * into the store. The file is checked against the digest and removed once the new location is committed.
+     *
+     * @return whether content was moved
+     */
+    public boolean migrateLegacyBlob(String digest) throws IOException {
+        Optional<AvatarBlob> blob = avatarBlobRepository.findForUpdate(digest);
+
+        if (blob.isEmpty() || blob.get().getFilePath() == null || avatarStore.contains(digest)) {
+            return false;
+        }
+
+        Path legacyFile = Path.of(blob.get().getFilePath());
+
+        if (!Files.isRegularFile(legacyFile)) {
+            logger.warn("Content of avatar blob {} is neither stored nor in {}", digest, legacyFile);
+
+            return false;
+        }
+
+        byte[] data = Files.readAllBytes(legacyFile);
+
+        if (!digest.equals(HexFormat.of().formatHex(createMessageDigest().digest(data)))) {
+            logger.warn("Legacy avatar file {} does not match blob {}, leaving it in place", legacyFile, digest);
+
+            return false;
+        }
+
+        String filePath = avatarStore.write(digest, data);
+        blob.get().setFilePath(filePath);
+        avatarRepository.updateFilePathByDigest(digest, filePath);
+        deleteLegacyFileAfterCommit(legacyFile, filePath);
+
+        return true;
+    }
+
+    /**
+     * Gives an avatar that still points at a legacy {@code {studentId}.{ext}} file and has no digest a blob
+     * in the avatar store, and removes the file once that is committed.
+     *
+     * @return whether the avatar was moved
+     */
+    public boolean migrateLegacyAvatar(long avatarId) throws IOException {
+        Optional<Avatar> avatar = avatarRepository.findById(avatarId)
+                .filter(it -> it.getDigest() == null && it.getFilePath() != null);
+
+        if (avatar.isEmpty()) {
+            return false;
+        }
+
+        Student student = avatar.get().getStudent();
+        avatarLocks.lockUntilCompletion(List.of(student.getId()));
+        Path legacyFile = Path.of(avatar.get().getFilePath());
+
+        if (!Files.isRegularFile(legacyFile)) {
+            logger.warn("Legacy avatar file {} of avatar with id = {} is missing", legacyFile, avatarId);
+
+            return false;
+        }
+
+        byte[] data = Files.readAllBytes(legacyFile);
+        String digest = HexFormat.of().formatHex(createMessageDigest().digest(data));
+
+        storeAvatar(avatar.get(), student, digest, data.length, avatar.get().getMediaType(), new LoadedContent(data));
+        deleteLegacyFileAfterCommit(legacyFile, avatar.get().getFilePath());
+
+        return true;
+    }
+
+    /**
+     * Brings a blob row in line with the avatars referencing it: the reference count is recounted and a blob
+     * nothing references is removed. The row is locked first, so an upload reusing the blob concurrently
+     * either finishes before the recount or finds the blob gone and stores it again.
+     */
+    public BlobReconciliation reconcileBlob(String digest) {
+        Optional<AvatarBlob> blob = avatarBlobRepository.findForUpdate(digest);
+
+        if (blob.isEmpty()) {
+            return BlobReconciliation.MISSING;
+        }
+
+        long references = avatarRepository.countByDigest(digest);
+
+        if (references == 0) {
+            logger.warn("Avatar blob {} is not referenced by any avatar, removing it", digest);
+
+            avatarBlobRepository.delete(blob.get());
+            deleteContentAfterCommit(digest);
+
+            return BlobReconciliation.ORPHAN_REMOVED;
+        }
+
+        if (blob.get().getReferenceCount() != references) {
+            logger.warn("Avatar blob {} counts {} references instead of {}, fixing it",
+                    digest, blob.get().getReferenceCount(), references);
+            blob.get().setReferenceCount((int) references);
+
+            return BlobReconciliation.REFERENCES_FIXED;
+        }
+
+        return BlobReconciliation.CONSISTENT;
+    }
+
+    public enum BlobReconciliation {
+        CONSISTENT,
+        REFERENCES_FIXED,
+        ORPHAN_REMOVED,
+        MISSING
+    }
+
+    /**
+     * Legacy avatars without a digest are not in the store yet and are sent from their file until they are migrated.
+     */
+    private Optional<AvatarRegion> locate(AvatarMetadata avatar, AvatarVariant variant) throws IOException {
+        if (variant.key() != null) {
+            return avatarStore.locate(variant.key());
+        }
+
+        Path legacyFile = Path.of(avatar.filePath());
+
+        if (!Files.isRegularFile(legacyFile)) {
+            logger.error("Legacy avatar file {} of avatar with id = {} is missing", legacyFile, avatar.id());
+
+            throw new AvatarNotFoundException(avatar.id());
+        }
+
+        return Optional.of(new AvatarRegion(legacyFile, 0, Files.size(legacyFile)));
+    }
+
+    /**
+     * Answers students that certainly have no avatar without a query.
+     */
+    private void requirePossibleAvatar(long studentId) {
+        if (!avatarPresenceFilter.mightContain(studentId)) {
+            logger.debug("Student with id = {} has no avatar", studentId);
+
+            throw new StudentNotFoundException(studentId);
+        }
+    }
+
+    /**
+     * Quality the client assigns to a media type: that of the most specific matching {@code Accept} range.
+     */
+    private static double acceptQuality(List<MediaType> accepted, String mediaType) {
+        MediaType type = MediaType.parseMediaType(mediaType);
+
+        return accepted.stream()
+                .filter(range -> range.includes(type))
+                .max(Comparator.comparingInt(AvatarService::specificity))
+                .map(MediaType::getQualityValue)
+                .orElse(0.0);
+    }
+
+    private static int specificity(MediaType range) {
+        return range.isWildcardType() ? 0 : range.isWildcardSubtype() ? 1 : 2;
+    }
+
+    private void storeAvatar(
+            Avatar avatar,
+            Student student,
+            String digest,
+            long fileSize,
+            String mediaType,
+            NewContent content
+    ) throws IOException {
+        String previousDigest = avatar.getDigest();
+
+        if (!digest.equals(previousDigest)) {
+            avatar.setFilePath(acquireBlob(digest, fileSize, mediaType, content));
+            avatar.setDigest(digest);
+
+            if (previousDigest != null) {
+                releaseBlob(previousDigest);
+            }
+        }
+
+        avatar.setStudent(student);
+        avatar.setFileSize(fileSize);
+        avatar.setMediaType(mediaType);
+        avatar.setUpdatedAt(Instant.now());
+
+        avatarRepository.save(avatar);
+
+        long studentId = student.getId();
+
+        // Added once committed: a rebuild scanning before the commit records it and replays it.
+        runAfterCommit(() -> {
+            avatarPresenceFilter.put(studentId);
+            avatarCache.invalidate(studentId);
+        });
     }
 
-    private String getExtensions(String fileName) {
-        logger.debug("Was invoked method to get avatar file extension by file name");
+    /**
+     * Copies the stream, failing as soon as it turns out longer than {@code maxSize}: the declared size of
+     * a multipart part is checked up front, but the body is not trusted to match it.
+     *
+     * @return the number of bytes copied
+     */
+    private static long copyWithin(InputStream is, OutputStream os, long maxSize) throws IOException {
+        byte[] buffer = new byte[UPLOAD_CHUNK_SIZE];
+        long copied = 0;
+        int read;
 
-        return fileName.substring(fileName.lastIndexOf(".") + 1);
+        while ((read = is.read(buffer)) != -1) {
+            copied += read;
+
+            if (copied > maxSize) {
+                logger.error("The avatar file size must not exceed big size");
+
+                throw new AvatarNotAllowedBigFileSizeException(copied, maxSize);
+            }
+
+            os.write(buffer, 0, read);
+        }
+
+        return copied;
+    }
+
+    /**
+     * Adds an uncompressed entry; images are compressed already, so deflating them again only costs CPU.
+     */
+    private static void putStoredEntry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    /**
+     * Adds a reference to the blob with the given digest, storing its content only if no avatar references it yet.
+     * Uploads of the same new content racing each other meet on the blob row: exactly one inserts it and
+     * stores the content, the others wait for that insert to commit and then add their reference to it.
+     *
+     * @return the location of the stored blob content
+     */
+    private String acquireBlob(String digest, long fileSize, String mediaType, NewContent content) throws IOException {
+        // A blob released to zero between the two statements is gone again, so the pair is retried.
+        for (int attempt = 0; attempt < MAX_BLOB_ATTEMPTS; attempt++) {
+            if (avatarBlobRepository.incrementReferenceCount(digest) > 0) {
+                logger.debug("Avatar blob {} is already stored, reusing it", digest);
+
+                return avatarBlobRepository.getReferenceById(digest).getFilePath();
+            }
+
+            if (avatarBlobRepository.insertIfAbsent(digest, fileSize, mediaType) > 0) {
+                String filePath = content.writeTo(digest);
+                avatarBlobRepository.updateFilePath(digest, filePath);
+                runAfterCommit(() -> content.scheduleThumbnails(digest, mediaType));
+
+                return filePath;
+            }
+        }
+
+        throw new IllegalStateException("Could not acquire avatar blob " + digest);
+    }
+
+    /**
+     * Drops a reference to the blob with the given digest and removes its content once nothing references it.
+     */
+    private void releaseBlob(String digest) throws IOException {
+        avatarBlobRepository.decrementReferenceCount(digest);
+
+        Optional<AvatarBlob> blob = avatarBlobRepository.findById(digest).filter(it -> it.getReferenceCount() <= 0);
+
+        if (blob.isPresent()) {
+            logger.debug("Avatar blob {} is no longer referenced, removing it", digest);
+
+            avatarBlobRepository.delete(blob.get());
+            deleteContentAfterCommit(digest);
+        }
+    }
+
+    /**
+     * Removes stored content only once the rows referencing it are gone for good; if the transaction
+     * rolls back the content stays. Content left behind by a crash is collected by the scrubber.
+     */
+    private void deleteContentAfterCommit(String digest) {
+        runAfterCommit(() -> {
+            try {
+                avatarStore.delete(digest);
+                avatarImageProcessor.deleteThumbnails(digest);
+            } catch (IOException e) {
+                logger.warn("Could not delete content of avatar blob {}, leaving it to the scrubber", digest, e);
+            }
+        });
+    }
+
+    private void deleteLegacyFileAfterCommit(Path legacyFile, String newLocation) {
+        if (legacyFile.toString().equals(newLocation)) {
+            return;
+        }
+
+        runAfterCommit(() -> {
+            try {
+                Files.deleteIfExists(legacyFile);
+            } catch (IOException e) {
+                logger.warn("Could not delete legacy avatar file {}", legacyFile, e);
+            }
+        });
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Content of an avatar that may not be stored yet.
+     */
+    private interface NewContent {
+        String writeTo(String digest) throws IOException;
+
+        void scheduleThumbnails(String digest, String mediaType);
+    }
+
+    private final class LoadedContent implements NewContent {
+        private final byte[] data;
+
+        private LoadedContent(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public String writeTo(String digest) throws IOException {
+            return avatarStore.write(digest, data);
+        }
+
+        @Override
+        public void scheduleThumbnails(String digest, String mediaType) {
+            avatarImageProcessor.scheduleThumbnails(digest, mediaType, data);
+        }
+    }
+
+    /**
+     * An upload in a temporary file; it is gone by the time thumbnails are made, so they are made from the store.
+     */
+    private final class UploadedContent implements NewContent {
+        private final Path file;
+
+        private UploadedContent(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public String writeTo(String digest) throws IOException {
+            return avatarStore.write(digest, file);
+        }
+
+        @Override
+        public void scheduleThumbnails(String digest, String mediaType) {
+            avatarImageProcessor.scheduleThumbnails(digest, mediaType);
+        }
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
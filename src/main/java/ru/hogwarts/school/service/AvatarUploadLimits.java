@@ -0,0 +1,115 @@
+package ru.hogwarts.school.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.exception.AvatarMediaTypeNotSupportedException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accepted avatar media types and maximum avatar sizes: a default one and optional overrides per media type,
+ * configured as {@code avatar.upload.max-size-by-type=image/gif=102400,image/png=204800}.
+ * Only raster images are accepted: content is served under its stored type, and a scriptable type such as
+ * SVG would run in the context of the site.
+ */
+@Component
+public class AvatarUploadLimits {
+    /**
+     * Room for multipart boundaries and part headers on top of the file itself.
+     */
+    private static final long MULTIPART_OVERHEAD = 16 * 1024;
+    private static final Set<String> SUPPORTED_TYPES = Set.of("image/jpeg", "image/png", "image/gif", "image/webp", "image/bmp");
+
+    private final long defaultMaxSize;
+    private final Map<String, Long> maxSizeByType = new HashMap<>();
+
+    public AvatarUploadLimits(
+            @Value("${avatar.upload.max-size:307200}") long defaultMaxSize,
+            @Value("${avatar.upload.max-size-by-type:}") List<String> maxSizeByType
+    ) {
+        this.defaultMaxSize = defaultMaxSize;
+
+        for (String limit : maxSizeByType) {
+            if (limit.isBlank()) {
+                continue;
+            }
+
+            int separator = limit.lastIndexOf('=');
+
+            if (separator < 0) {
+                throw new IllegalArgumentException("Avatar size limit must look like type/subtype=bytes: " + limit);
+            }
+
+            String mediaType = MediaType.parseMediaType(limit.substring(0, separator).trim()).toString();
+            this.maxSizeByType.put(mediaType, Long.parseLong(limit.substring(separator + 1).trim()));
+        }
+    }
+
+    /**
+     * @return the media type without parameters
+     * @throws AvatarMediaTypeNotSupportedException if the type is missing, malformed or not a supported image type
+     */
+    public MediaType requireSupported(String mediaType) {
+        MediaType type;
+
+        try {
+            type = mediaType == null ? null : MediaType.parseMediaType(mediaType);
+        } catch (InvalidMediaTypeException e) {
+            type = null;
+        }
+
+        if (type == null || !isSupported(type.toString())) {
+            throw new AvatarMediaTypeNotSupportedException(mediaType);
+        }
+
+        return new MediaType(type.getType(), type.getSubtype());
+    }
+
+    public boolean isSupported(String mediaType) {
+        try {
+            MediaType type = MediaType.parseMediaType(mediaType);
+
+            return SUPPORTED_TYPES.contains(type.getType() + "/" + type.getSubtype());
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @throws AvatarMediaTypeNotSupportedException if the type is malformed
+     */
+    public long maxSize(String mediaType) {
+        if (mediaType == null) {
+            return defaultMaxSize;
+        }
+
+        MediaType type;
+
+        try {
+            type = MediaType.parseMediaType(mediaType);
+        } catch (InvalidMediaTypeException e) {
+            throw new AvatarMediaTypeNotSupportedException(mediaType);
+        }
+
+        return maxSizeByType.getOrDefault(type.getType() + "/" + type.getSubtype(), defaultMaxSize);
+    }
+
+    /**
+     * The limit for a request whose media type is not known yet.
+     */
+    public long largestMaxSize() {
+        return maxSizeByType.values().stream().mapToLong(Long::longValue).reduce(defaultMaxSize, Math::max);
+    }
+
+    /**
+     * The limit for a whole multipart upload request carrying a file of {@link #largestMaxSize()}.
+     */
+    public long largestRequestSize() {
+        return largestMaxSize() + MULTIPART_OVERHEAD;
+    }
+}
\ No newline at end of file
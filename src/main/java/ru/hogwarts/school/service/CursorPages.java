@@ -0,0 +1,26 @@
+package ru.hogwarts.school.service;
+
+import ru.hogwarts.school.model.CursorPage;
+
+import java.util.List;
+import java.util.function.Function;
+
+final class CursorPages {
+    static final int MAX_PAGE_SIZE = 100;
+
+    private CursorPages() {
+    }
+
+    static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * A full page may have more rows after it, so it gets a cursor pointing after its last row.
+     */
+    static <T> CursorPage<T> of(List<T> items, int pageSize, Function<T, PageCursor> cursorAfter) {
+        String nextCursor = items.size() == pageSize ? cursorAfter.apply(items.get(pageSize - 1)).encode() : null;
+
+        return new CursorPage<>(items, nextCursor);
+    }
+}
@@ -1,28 +1,45 @@
 package ru.hogwarts.school.service;
 
+import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import ru.hogwarts.school.exception.FacultyNotFoundException;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.FacultySort;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.repository.StudentRepository;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 public class FacultyService {
     private final FacultyRepository facultyRepository;
+    private final StudentRepository studentRepository;
+    private final JsonStreamWriter jsonStreamWriter;
 
     private static final Logger logger = LoggerFactory.getLogger(FacultyService.class);
 
     @Autowired
-    public FacultyService(FacultyRepository facultyRepository) {
+    public FacultyService(
+            FacultyRepository facultyRepository,
+            StudentRepository studentRepository,
+            JsonStreamWriter jsonStreamWriter
+    ) {
         this.facultyRepository = facultyRepository;
+        this.studentRepository = studentRepository;
+        this.jsonStreamWriter = jsonStreamWriter;
     }
 
     public long addFaculty(Faculty faculty) {
@@ -58,6 +75,35 @@ public class FacultyService {
         return facultyRepository.findAll();
     }
 
+    /**
+     * A page of faculties ordered by the sort key and then by id, continuing after the cursor from the previous page.
+     */
+    public CursorPage<Faculty> getFacultiesPage(FacultySort sort, int limit, String cursor) {
+        logger.info("Was invoked method to get a page of faculties");
+
+        int pageSize = CursorPages.pageSize(limit);
+        PageCursor after = PageCursor.decode(cursor);
+        Pageable page = PageRequest.of(0, pageSize);
+
+        List<Faculty> faculties = switch (sort) {
+            case ID -> facultyRepository.findPageById(after.id(), page);
+            case NAME -> facultyRepository.findPageByName(after.key(), after.id(), page);
+        };
+
+        return CursorPages.of(faculties, pageSize, faculty -> new PageCursor(
+                sort == FacultySort.NAME ? faculty.getName() : "", faculty.getId()
+        ));
+    }
+
+    @Transactional
+    public void writeAllFaculties(OutputStream out, JsonStreamWriter.Format format) throws IOException {
+        logger.info("Was invoked method to stream all faculties");
+
+        try (Stream<Faculty> faculties = facultyRepository.streamAll()) {
+            jsonStreamWriter.write(faculties, out, format);
+        }
+    }
+
     public String getLongestFacultiesName() {
         logger.info("Was invoked method to get the longest faculties name");
 
@@ -86,4 +132,21 @@ public class FacultyService {
 
         return this.findFaculty(id).getStudents();
     }
+
+    public CursorPage<Student> getFacultyStudentsPage(long id, int limit, String cursor) {
+        logger.info("Was invoked method to get a page of students on faculty by id property");
+
+        if (!facultyRepository.existsById(id)) {
+            logger.error("There is not faculty with id = {}", id);
+
+            throw new FacultyNotFoundException(id);
+        }
+
+        int pageSize = CursorPages.pageSize(limit);
+        List<Student> students = studentRepository.findFacultyPage(
+                id, PageCursor.decode(cursor).id(), PageRequest.of(0, pageSize)
+        );
+
+        return CursorPages.of(students, pageSize, student -> new PageCursor("", student.getId()));
+    }
 }
@@ -0,0 +1,78 @@
+package ru.hogwarts.school.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Serializes entities to the response one at a time as they come from a query stream, detaching each one once
+ * written, so neither the persistence context nor a response buffer grows with the number of rows.
+ */
+@Component
+public class JsonStreamWriter {
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+
+    public JsonStreamWriter(ObjectMapper objectMapper, EntityManager entityManager) {
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    public long write(Stream<?> rows, OutputStream out, Format format) throws IOException {
+        // The servlet container flushes the output buffer once it fills up; flushing per row only adds syscalls.
+        ObjectWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        long written = 0;
+
+        try (SequenceWriter sequence = format == Format.NDJSON
+                ? writer.withRootValueSeparator("\n").writeValues(out)
+                : writer.writeValuesAsArray(out)) {
+            Iterator<?> iterator = rows.iterator();
+
+            while (iterator.hasNext()) {
+                Object row = iterator.next();
+
+                sequence.write(row);
+                entityManager.detach(row);
+                written++;
+            }
+        }
+
+        if (format == Format.NDJSON && written > 0) {
+            out.write('\n');
+        }
+
+        out.flush();
+
+        return written;
+    }
+
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        JSON(MediaType.APPLICATION_JSON_VALUE);
+
+        private final String mediaType;
+
+        Format(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+    }
+}
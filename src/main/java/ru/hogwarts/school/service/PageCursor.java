@@ -0,0 +1,46 @@
+package ru.hogwarts.school.service;
+
+import ru.hogwarts.school.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position after the last row of a keyset-paginated page: the sort key and the id breaking ties on it.
+ * Clients get it as an opaque URL-safe token and send it back unchanged.
+ */
+record PageCursor(String key, long id) {
+    static final PageCursor FIRST = new PageCursor("", -1);
+
+    int intKey() {
+        try {
+            return Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException(encode());
+        }
+    }
+
+    String encode() {
+        byte[] token = (id + ":" + key).getBytes(StandardCharsets.UTF_8);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * @return {@link #FIRST} for a missing token
+     */
+    static PageCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return FIRST;
+        }
+
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+
+            return new PageCursor(value.substring(separator + 1), Long.parseLong(value.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidCursorException(token);
+        }
+    }
+}
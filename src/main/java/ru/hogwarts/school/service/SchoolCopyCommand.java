@@ -0,0 +1,77 @@
+package ru.hogwarts.school.service;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command-line mode that copies faculties and students between the database and CSV files, see
+ * {@link SchoolCopyService}. Runs on startup when the application is launched with any of
+ * {@code --copy-import-faculties=<file>}, {@code --copy-import-students=<file>},
+ * {@code --copy-export-faculties=<file>} and {@code --copy-export-students=<file>}; imports run before
+ * exports and faculties before students, so students can refer to faculties from the same run.
+ */
+@Component
+public class SchoolCopyCommand implements ApplicationRunner {
+    static final String OPTION_PREFIX = "copy-";
+    static final String IMPORT_FACULTIES = "copy-import-faculties";
+    static final String IMPORT_STUDENTS = "copy-import-students";
+    static final String EXPORT_FACULTIES = "copy-export-faculties";
+    static final String EXPORT_STUDENTS = "copy-export-students";
+
+    private final SchoolCopyService schoolCopyService;
+
+    public SchoolCopyCommand(SchoolCopyService schoolCopyService) {
+        this.schoolCopyService = schoolCopyService;
+    }
+
+    /**
+     * Whether the arguments ask for a copy, in which case the application does not need a web server and
+     * should stop once the copy is done.
+     */
+    public static boolean isRequested(String[] args) {
+        return Arrays.stream(args).anyMatch(arg -> arg.startsWith("--" + OPTION_PREFIX));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        Path importFaculties = file(args, IMPORT_FACULTIES);
+        Path importStudents = file(args, IMPORT_STUDENTS);
+        Path exportFaculties = file(args, EXPORT_FACULTIES);
+        Path exportStudents = file(args, EXPORT_STUDENTS);
+
+        if (importFaculties != null) {
+            schoolCopyService.importFaculties(importFaculties);
+        }
+
+        if (importStudents != null) {
+            schoolCopyService.importStudents(importStudents);
+        }
+
+        if (exportFaculties != null) {
+            schoolCopyService.exportFaculties(exportFaculties);
+        }
+
+        if (exportStudents != null) {
+            schoolCopyService.exportStudents(exportStudents);
+        }
+    }
+
+    private static Path file(ApplicationArguments args, String option) {
+        List<String> values = args.getOptionValues(option);
+
+        if (values == null) {
+            return null;
+        }
+
+        if (values.size() != 1 || values.get(0).isBlank()) {
+            throw new IllegalArgumentException("--" + option + " needs exactly one file");
+        }
+
+        return Path.of(values.get(0));
+    }
+}
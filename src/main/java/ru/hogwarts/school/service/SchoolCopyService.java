@@ -0,0 +1,319 @@
+package ru.hogwarts.school.service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import ru.hogwarts.school.model.TableCopyReport;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves whole student and faculty tables between the database and CSV files without going through JPA.
+ * On PostgreSQL rows are streamed with {@code COPY FROM STDIN} / {@code COPY TO STDOUT}; on H2 the
+ * {@code CSVREAD} / {@code CSVWRITE} functions do the same. Either way memory use does not depend on the
+ * number of rows.
+ * <p>
+ * Files have a header line and the columns {@code id,name,color} for faculties and {@code id,name,age,faculty}
+ * for students, {@code faculty} being the faculty name; exports can be imported again as they are. An import
+ * first copies the file into a temporary table and checks it there with a handful of set-based queries, so
+ * faculty references, clashing ids and repeated student names are found in bulk instead of row by row. Rows
+ * keep the id from the file or, when the id column is empty, are numbered after the largest id; the whole file
+ * is loaded in one transaction or not at all, together with moving the entity sequence past the loaded ids.
+ */
+@Service
+public class SchoolCopyService {
+    // A next sequence value this far past the largest id keeps both pooled optimizers clear of existing rows.
+    private static final long SEQUENCE_HEADROOM = 51;
+
+    private static final String FACULTY_EXPORT_QUERY =
+            "SELECT f.id AS \"id\", f.name AS \"name\", f.color AS \"color\" FROM faculty f ORDER BY f.id";
+
+    private static final String STUDENT_EXPORT_QUERY =
+            "SELECT s.id AS \"id\", s.name AS \"name\", s.age AS \"age\", f.name AS \"faculty\" " +
+                    "FROM student s LEFT JOIN faculty f ON f.id = s.faculty_id ORDER BY s.id";
+
+    private static final Map<String, String> FACULTY_CHECKS = new LinkedHashMap<>();
+    private static final Map<String, String> STUDENT_CHECKS = new LinkedHashMap<>();
+
+    static {
+        FACULTY_CHECKS.put("ids repeated in the file",
+                "SELECT COUNT(*) FROM (SELECT id FROM faculty_copy WHERE id IS NOT NULL GROUP BY id HAVING COUNT(*) > 1) d");
+        FACULTY_CHECKS.put("ids already in the faculty table",
+                "SELECT COUNT(*) FROM faculty_copy c WHERE EXISTS (SELECT 1 FROM faculty f WHERE f.id = c.id)");
+
+        STUDENT_CHECKS.put("ids repeated in the file",
+                "SELECT COUNT(*) FROM (SELECT id FROM student_copy WHERE id IS NOT NULL GROUP BY id HAVING COUNT(*) > 1) d");
+        STUDENT_CHECKS.put("ids already in the student table",
+                "SELECT COUNT(*) FROM student_copy c WHERE EXISTS (SELECT 1 FROM student s WHERE s.id = c.id)");
+        STUDENT_CHECKS.put("names repeated in the file",
+                "SELECT COUNT(*) FROM (SELECT name FROM student_copy GROUP BY name HAVING COUNT(*) > 1) d");
+        STUDENT_CHECKS.put("names already in the student table",
+                "SELECT COUNT(*) FROM student_copy c WHERE EXISTS (SELECT 1 FROM student s WHERE s.name = c.name)");
+        STUDENT_CHECKS.put("unknown faculties",
+                "SELECT COUNT(*) FROM student_copy c " +
+                        "WHERE c.faculty IS NOT NULL AND NOT EXISTS (SELECT 1 FROM faculty f WHERE f.name = c.faculty)");
+        STUDENT_CHECKS.put("faculty names matching several faculties",
+                "SELECT COUNT(*) FROM student_copy c " +
+                        "WHERE c.faculty IN (SELECT name FROM faculty GROUP BY name HAVING COUNT(*) > 1)");
+    }
+
+    private final DataSource dataSource;
+
+    private static final Logger logger = LoggerFactory.getLogger(SchoolCopyService.class);
+
+    public SchoolCopyService(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public TableCopyReport importFaculties(Path file) throws IOException, SQLException {
+        logger.info("Was invoked method to copy faculties from {}", file);
+
+        return load(file, "faculty", "faculty_copy",
+                "CREATE LOCAL TEMPORARY TABLE faculty_copy (id BIGINT, name VARCHAR(255), color VARCHAR(255)) ON COMMIT DROP",
+                "id, name, color",
+                "CAST(NULLIF(id, '') AS BIGINT), name, color",
+                FACULTY_CHECKS,
+                "INSERT INTO faculty (id, name, color) " +
+                        "SELECT COALESCE(c.id, %d + ROW_NUMBER() OVER ()), c.name, c.color FROM faculty_copy c",
+                "faculty_seq");
+    }
+
+    public TableCopyReport importStudents(Path file) throws IOException, SQLException {
+        logger.info("Was invoked method to copy students from {}", file);
+
+        return load(file, "student", "student_copy",
+                "CREATE LOCAL TEMPORARY TABLE student_copy (id BIGINT, name VARCHAR(255), age INTEGER, faculty VARCHAR(255)) ON COMMIT DROP",
+                "id, name, age, faculty",
+                "CAST(NULLIF(id, '') AS BIGINT), name, CAST(age AS INTEGER), NULLIF(faculty, '')",
+                STUDENT_CHECKS,
+                "INSERT INTO student (id, name, age, faculty_id) " +
+                        "SELECT COALESCE(c.id, %d + ROW_NUMBER() OVER ()), c.name, c.age, f.id " +
+                        "FROM student_copy c LEFT JOIN faculty f ON f.name = c.faculty",
+                "student_seq");
+    }
+
+    public TableCopyReport exportFaculties(Path file) throws IOException, SQLException {
+        logger.info("Was invoked method to copy faculties to {}", file);
+
+        return unload(file, "faculty", FACULTY_EXPORT_QUERY);
+    }
+
+    public TableCopyReport exportStudents(Path file) throws IOException, SQLException {
+        logger.info("Was invoked method to copy students to {}", file);
+
+        return unload(file, "student", STUDENT_EXPORT_QUERY);
+    }
+
+    private TableCopyReport load(
+            Path file,
+            String table,
+            String stagingTable,
+            String createStaging,
+            String columns,
+            String csvColumns,
+            Map<String, String> checks,
+            String insert,
+            String sequence
+    ) throws IOException, SQLException {
+        long startedAt = System.nanoTime();
+        long inserted;
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                boolean postgres = isPostgres(connection);
+
+                try (Statement statement = connection.createStatement()) {
+                    // H2 commits before DDL unless told otherwise, which would drop the staging table right away.
+                    statement.execute(postgres ? createStaging : createStaging + " TRANSACTIONAL");
+                }
+
+                long staged = postgres
+                        ? copyIn(connection, file, "COPY " + stagingTable + " (" + columns + ") FROM STDIN WITH (FORMAT csv, HEADER true)")
+                        : csvRead(connection, file, "INSERT INTO " + stagingTable + " (" + columns + ") " +
+                        "SELECT " + csvColumns + " FROM CSVREAD(%s, NULL, 'charset=UTF-8')");
+
+                check(connection, table, checks);
+
+                // Rows without an id are numbered past every id in the table and in the file.
+                long lastId = maxId(connection, "SELECT MAX(id) FROM (SELECT id FROM " + table +
+                        " UNION ALL SELECT id FROM " + stagingTable + ") ids");
+
+                try (Statement statement = connection.createStatement()) {
+                    inserted = statement.executeUpdate(insert.formatted(lastId));
+                }
+
+                advanceSequence(connection, postgres, table, sequence);
+                connection.commit();
+
+                logger.info("Copied {} of {} staged rows into {}", inserted, staged, table);
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+
+                throw e;
+            }
+
+            return report(table, "import", inserted, Files.size(file), startedAt);
+        }
+    }
+
+    private TableCopyReport unload(Path file, String table, String query) throws IOException, SQLException {
+        long startedAt = System.nanoTime();
+        long rows;
+
+        try (Connection connection = dataSource.getConnection()) {
+            rows = isPostgres(connection)
+                    ? copyOut(connection, file, "COPY (" + query + ") TO STDOUT WITH (FORMAT csv, HEADER true)")
+                    : csvWrite(connection, file, query);
+        }
+
+        return report(table, "export", rows, Files.size(file), startedAt);
+    }
+
+    private void check(Connection connection, String table, Map<String, String> checks) throws SQLException {
+        List<String> problems = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement()) {
+            for (Map.Entry<String, String> check : checks.entrySet()) {
+                try (ResultSet result = statement.executeQuery(check.getValue())) {
+                    result.next();
+                    long count = result.getLong(1);
+
+                    if (count > 0) {
+                        problems.add(count + " " + check.getKey());
+                    }
+                }
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Nothing was copied into " + table + ": " + String.join(", ", problems));
+        }
+    }
+
+    /**
+     * Moves the sequence past the largest id, in the load transaction. It is never moved back: the application
+     * may already have taken values above the largest id.
+     */
+    private void advanceSequence(Connection connection, boolean postgres, String table, String sequence) throws SQLException {
+        long restartWith = maxId(connection, "SELECT MAX(id) FROM " + table) + SEQUENCE_HEADROOM;
+
+        if (postgres) {
+            // With is_called set, the next value is the one given plus the increment of 50.
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT setval(?, GREATEST((SELECT last_value FROM " + sequence + "), ?))")) {
+                statement.setString(1, sequence);
+                statement.setLong(2, restartWith - 50);
+                statement.execute();
+            }
+
+            return;
+        }
+
+        long nextValue;
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = UPPER(?)")) {
+            statement.setString(1, sequence);
+
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                nextValue = result.getLong(1);
+            }
+        }
+
+        if (nextValue < restartWith) {
+            // Unlike other DDL, H2 runs this without committing the open transaction.
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + restartWith);
+            }
+        }
+    }
+
+    private long maxId(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+
+            return result.getLong(1);
+        }
+    }
+
+    private long copyIn(Connection connection, Path file, String sql) throws IOException, SQLException {
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return copyManager.copyIn(sql, reader);
+        }
+    }
+
+    private long copyOut(Connection connection, Path file, String sql) throws IOException, SQLException {
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return copyManager.copyOut(sql, writer);
+        }
+    }
+
+    private long csvRead(Connection connection, Path file, String sql) throws SQLException {
+        // H2 resolves the CSVREAD file name while preparing the statement, before parameters are bound.
+        String fileName = "'" + file.toAbsolutePath().toString().replace("'", "''") + "'";
+
+        try (Statement statement = connection.createStatement()) {
+            return statement.executeUpdate(sql.formatted(fileName));
+        }
+    }
+
+    private long csvWrite(Connection connection, Path file, String query) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("CALL CSVWRITE(?, ?, 'charset=UTF-8')")) {
+            statement.setString(1, file.toAbsolutePath().toString());
+            statement.setString(2, query);
+
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+
+                return result.getLong(1);
+            }
+        }
+    }
+
+    private boolean isPostgres(Connection connection) throws SQLException {
+        String product = connection.getMetaData().getDatabaseProductName();
+
+        if (product.equals("PostgreSQL")) {
+            return true;
+        }
+
+        if (product.equals("H2")) {
+            return false;
+        }
+
+        throw new IllegalStateException("Table copy is not supported on " + product);
+    }
+
+    private TableCopyReport report(String table, String direction, long rows, long bytes, long startedAt) {
+        TableCopyReport report = new TableCopyReport(table, direction, rows, bytes, (System.nanoTime() - startedAt) / 1_000_000);
+
+        logger.info("Copied {} {} rows ({} bytes) in {} ms: {} rows/s, {} bytes/s",
+                report.rows(), table, report.bytes(), report.millis(), report.rowsPerSecond(), report.bytesPerSecond());
+
+        return report;
+    }
+}
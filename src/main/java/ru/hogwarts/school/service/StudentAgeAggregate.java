@@ -0,0 +1,161 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.StudentAgeStats;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count, sum, minimum and maximum of student ages kept in memory, so age statistics are answered without
+ * reading the student table. {@link StudentService} applies every change once it is saved, and the figures
+ * are reloaded from the database every {@code student.age-stats.reconcile-interval-seconds} to correct drift
+ * from concurrent updates or from changes made around the service. Removing the youngest or the oldest
+ * student leaves the bounds unknown until they are reloaded on the next read.
+ */
+@Component
+public class StudentAgeAggregate {
+    private final StudentRepository studentRepository;
+    private final long reconcileIntervalSeconds;
+    private final ScheduledExecutorService scheduler;
+
+    private boolean loaded;
+    private boolean boundsStale;
+    private long count;
+    private long sum;
+    private int minAge;
+    private int maxAge;
+
+    private static final Logger logger = LoggerFactory.getLogger(StudentAgeAggregate.class);
+
+    public StudentAgeAggregate(
+            StudentRepository studentRepository,
+            @Value("${student.age-stats.reconcile-interval-seconds:300}") long reconcileIntervalSeconds
+    ) {
+        this.studentRepository = studentRepository;
+        this.reconcileIntervalSeconds = reconcileIntervalSeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "student-age-stats");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                logger.warn("Could not reconcile student age statistics", e);
+            }
+        }, reconcileIntervalSeconds, reconcileIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Replaces the figures with the ones computed by the database.
+     */
+    public synchronized void reconcile() {
+        StudentAgeStats stats = studentRepository.getAgeStats();
+
+        if (stats == null) {
+            stats = StudentAgeStats.EMPTY;
+        }
+
+        if (loaded && (stats.count() != count || stats.sum() != sum)) {
+            logger.warn("Student age statistics drifted to count = {}, sum = {}, reloaded count = {}, sum = {}",
+                    count, sum, stats.count(), stats.sum());
+        }
+
+        count = stats.count();
+        sum = stats.sum();
+        minAge = stats.minAge() == null ? 0 : stats.minAge();
+        maxAge = stats.maxAge() == null ? 0 : stats.maxAge();
+        boundsStale = false;
+        loaded = true;
+    }
+
+    public synchronized StudentAgeStats stats() {
+        if (!loaded || boundsStale) {
+            reconcile();
+        }
+
+        return count == 0 ? StudentAgeStats.EMPTY : new StudentAgeStats(count, sum, minAge, maxAge);
+    }
+
+    public synchronized int averageAge() {
+        if (!loaded) {
+            reconcile();
+        }
+
+        return count == 0 ? 0 : (int) (sum / count);
+    }
+
+    public synchronized void added(int age) {
+        // Until the first load the database holds the change already.
+        if (!loaded) {
+            return;
+        }
+
+        count++;
+        sum += age;
+
+        if (count == 1) {
+            minAge = age;
+            maxAge = age;
+        } else {
+            minAge = Math.min(minAge, age);
+            maxAge = Math.max(maxAge, age);
+        }
+    }
+
+    public synchronized void removed(int age) {
+        if (!loaded) {
+            return;
+        }
+
+        count--;
+        sum -= age;
+
+        if (count <= 0) {
+            count = 0;
+            sum = 0;
+            boundsStale = false;
+        } else if (age <= minAge || age >= maxAge) {
+            boundsStale = true;
+        }
+    }
+
+    /**
+     * Keeps the bounds exact unless the old age was on a bound and the new one moves inwards: other students
+     * may or may not share that bound, so it is left to the next read to reload.
+     */
+    public synchronized void changed(int oldAge, int newAge) {
+        if (!loaded || oldAge == newAge) {
+            return;
+        }
+
+        sum += newAge - oldAge;
+
+        if ((oldAge == minAge && newAge > minAge) || (oldAge == maxAge && newAge < maxAge)) {
+            boundsStale = true;
+        }
+
+        minAge = Math.min(minAge, newAge);
+        maxAge = Math.max(maxAge, newAge);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
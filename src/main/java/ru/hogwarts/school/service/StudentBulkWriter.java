@@ -0,0 +1,49 @@
+package ru.hogwarts.school.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.Student;
+
+import java.util.List;
+
+/**
+ * Inserts many students in one transaction. Ids come from the pooled student sequence, one round trip per
+ * 50 students, and inserts are flushed every {@code student.bulk.batch-size} students, which Hibernate sends
+ * as a single JDBC batch; the persistence context is cleared after each flush so it never holds more than
+ * one batch.
+ */
+@Component
+public class StudentBulkWriter {
+    private final EntityManager entityManager;
+    private final int batchSize;
+
+    public StudentBulkWriter(EntityManager entityManager, @Value("${student.bulk.batch-size:50}") int batchSize) {
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the given students with their ids assigned, in the same order
+     */
+    @Transactional
+    public List<Student> persistAll(List<Student> students) {
+        for (int i = 0; i < students.size(); i++) {
+            Student student = students.get(i);
+            // Ids sent by the client are ignored, every student is a new one.
+            student.setId(0);
+            entityManager.persist(student);
+
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+
+        return students;
+    }
+}
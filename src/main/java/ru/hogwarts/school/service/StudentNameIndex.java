@@ -0,0 +1,220 @@
+package ru.hogwarts.school.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.StudentNameEntry;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional in-memory copy of student names, sorted by lower-cased name and id like the name prefix query, so
+ * autocomplete can be answered without the database. Enabled by {@code student.name-index.in-memory}; it is
+ * loaded on startup, {@link StudentService} keeps it up to date on every write, and it is reloaded every
+ * {@code student.name-index.reconcile-interval-seconds} to correct drift from changes made around the service.
+ * Names are compared by Unicode code point, the order of the query's {@code "C"} collation. A sorted skip list
+ * serves prefix lookups the way a trie would, and lets readers run without locking.
+ */
+@Component
+public class StudentNameIndex {
+    private static final Comparator<Key> ORDER = Comparator.comparing(Key::lowerName, StudentNameIndex::compare)
+            .thenComparingLong(Key::id);
+
+    private final StudentRepository studentRepository;
+    private final boolean enabled;
+    private final long reconcileIntervalSeconds;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile ConcurrentSkipListMap<Key, String> names = new ConcurrentSkipListMap<>(ORDER);
+    private Map<Long, Key> keysById = new HashMap<>();
+    // Writes made while a reload reads the table, replayed over its result; a null name is a removal.
+    private Map<Long, String> changesDuringReload;
+    private volatile boolean ready;
+
+    private static final Logger logger = LoggerFactory.getLogger(StudentNameIndex.class);
+
+    public StudentNameIndex(
+            StudentRepository studentRepository,
+            @Value("${student.name-index.in-memory:false}") boolean enabled,
+            @Value("${student.name-index.reconcile-interval-seconds:300}") long reconcileIntervalSeconds
+    ) {
+        this.studentRepository = studentRepository;
+        this.enabled = enabled;
+        this.reconcileIntervalSeconds = reconcileIntervalSeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "student-name-index");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        reconcile();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                logger.warn("Could not reconcile the in-memory student name index", e);
+            }
+        }, reconcileIntervalSeconds, reconcileIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Reloads all names into a new index and swaps it in. Readers and writers are not blocked while the table
+     * is read; writes made meanwhile are applied to the new index before the swap.
+     */
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (this) {
+            if (changesDuringReload != null) {
+                return;
+            }
+
+            changesDuringReload = new HashMap<>();
+        }
+
+        try {
+            ConcurrentSkipListMap<Key, String> reloadedNames = new ConcurrentSkipListMap<>(ORDER);
+            Map<Long, Key> reloadedKeys = new HashMap<>();
+
+            for (StudentNameEntry student : studentRepository.findAllNames()) {
+                put(reloadedNames, reloadedKeys, student.id(), student.name());
+            }
+
+            synchronized (this) {
+                changesDuringReload.forEach((id, name) -> put(reloadedNames, reloadedKeys, id, name));
+
+                if (ready && reloadedNames.size() != names.size()) {
+                    logger.warn("Student name index drifted to {} names, reloaded {}",
+                            names.size(), reloadedNames.size());
+                }
+
+                names = reloadedNames;
+                keysById = reloadedKeys;
+                ready = true;
+            }
+
+            logger.info("Loaded {} student names into the in-memory name index", reloadedNames.size());
+        } finally {
+            synchronized (this) {
+                changesDuringReload = null;
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized void put(long id, String name) {
+        if (!enabled) {
+            return;
+        }
+
+        put(names, keysById, id, name);
+
+        if (changesDuringReload != null) {
+            changesDuringReload.put(id, name);
+        }
+    }
+
+    public void remove(long id) {
+        put(id, null);
+    }
+
+    /**
+     * Same result as the name prefix query: names starting with the lower-cased prefix, after the cursor,
+     * ordered by lower-cased name and id.
+     */
+    public List<StudentNameEntry> findByPrefix(String lowerPrefix, PageCursor after, int limit) {
+        ConcurrentSkipListMap<Key, String> names = this.names;
+        ConcurrentNavigableMap<Key, String> range = compare(after.key(), lowerPrefix) < 0
+                ? names.tailMap(new Key(lowerPrefix, Long.MIN_VALUE), true)
+                : names.tailMap(new Key(after.key(), after.id()), false);
+        List<StudentNameEntry> students = new ArrayList<>(limit);
+
+        for (Map.Entry<Key, String> entry : range.entrySet()) {
+            // Names are sorted, so the first one without the prefix ends the range.
+            if (students.size() == limit || !entry.getKey().lowerName().startsWith(lowerPrefix)) {
+                break;
+            }
+
+            students.add(new StudentNameEntry(entry.getKey().id(), entry.getValue()));
+        }
+
+        return students;
+    }
+
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Orders strings by Unicode code point, as the {@code "C"} collation orders UTF-8 text;
+     * {@link String#compareTo} orders by UTF-16 unit and puts supplementary characters too early.
+     */
+    static int compare(String a, String b) {
+        int i = 0;
+        int j = 0;
+
+        while (i < a.length() && j < b.length()) {
+            int codePointA = a.codePointAt(i);
+            int codePointB = b.codePointAt(j);
+
+            if (codePointA != codePointB) {
+                return Integer.compare(codePointA, codePointB);
+            }
+
+            i += Character.charCount(codePointA);
+            j += Character.charCount(codePointB);
+        }
+
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static void put(Map<Key, String> names, Map<Long, Key> keysById, long id, String name) {
+        Key key = keysById.remove(id);
+
+        if (key != null) {
+            names.remove(key);
+        }
+
+        if (name != null) {
+            key = new Key(normalize(name), id);
+            names.put(key, name);
+            keysById.put(id, key);
+        }
+    }
+
+    private record Key(String lowerName, long id) {
+    }
+}
@@ -1,33 +1,83 @@
 package ru.hogwarts.school.service;
 
+import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import ru.hogwarts.school.exception.StudentNotFoundException;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.model.StudentAgeStats;
+import ru.hogwarts.school.model.StudentNameEntry;
+import ru.hogwarts.school.model.StudentNamePage;
+import ru.hogwarts.school.model.StudentSort;
 import ru.hogwarts.school.repository.StudentRepository;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class StudentService {
     private final StudentRepository studentRepository;
+    private final StudentAgeAggregate studentAgeAggregate;
+    private final StudentNameIndex studentNameIndex;
+    private final JsonStreamWriter jsonStreamWriter;
+    private final StudentBulkWriter studentBulkWriter;
 
     private static final Logger logger = LoggerFactory.getLogger(StudentService.class);
 
     @Autowired
-    public StudentService(StudentRepository studentRepository) {
+    public StudentService(
+            StudentRepository studentRepository,
+            StudentAgeAggregate studentAgeAggregate,
+            StudentNameIndex studentNameIndex,
+            JsonStreamWriter jsonStreamWriter,
+            StudentBulkWriter studentBulkWriter
+    ) {
         this.studentRepository = studentRepository;
+        this.studentAgeAggregate = studentAgeAggregate;
+        this.studentNameIndex = studentNameIndex;
+        this.jsonStreamWriter = jsonStreamWriter;
+        this.studentBulkWriter = studentBulkWriter;
     }
 
     public long addStudent(Student student) {
         logger.info("Was invoked method to add student");
 
-        return studentRepository.save(student).getId();
+        Student savedStudent = studentRepository.save(student);
+        studentAgeAggregate.added(savedStudent.getAge());
+        studentNameIndex.put(savedStudent.getId(), savedStudent.getName());
+
+        return savedStudent.getId();
+    }
+
+    /**
+     * Adds all students in one transaction.
+     *
+     * @return ids of the added students, in the order they were given
+     */
+    public List<Long> addStudents(List<Student> students) {
+        logger.info("Was invoked method to add {} students", students.size());
+
+        List<Student> savedStudents = studentBulkWriter.persistAll(students);
+
+        for (Student student : savedStudents) {
+            studentAgeAggregate.added(student.getAge());
+            studentNameIndex.put(student.getId(), student.getName());
+        }
+
+        return savedStudents.stream().map(Student::getId).toList();
     }
 
     public Student findStudent(long id) {
@@ -40,15 +90,36 @@ public class StudentService {
         });
     }
 
+    public List<Student> findStudents(Collection<Long> ids) {
+        logger.info("Was invoked method to find students by ids");
+
+        return studentRepository.findAllById(ids);
+    }
+
     public Student updateStudent(Student student) {
         logger.info("Was invoked method to update info about student");
 
-        return studentRepository.save(student);
+        Optional<Integer> previousAge = studentRepository.findAgeById(student.getId());
+        Student savedStudent = studentRepository.save(student);
+
+        if (previousAge.isPresent()) {
+            studentAgeAggregate.changed(previousAge.get(), savedStudent.getAge());
+        } else {
+            studentAgeAggregate.added(savedStudent.getAge());
+        }
+
+        studentNameIndex.put(savedStudent.getId(), savedStudent.getName());
+
+        return savedStudent;
     }
 
     public void deleteStudent(long id) {
         logger.info("Was invoked method to delete student from db");
+
+        Optional<Integer> age = studentRepository.findAgeById(id);
         studentRepository.deleteById(id);
+        age.ifPresent(studentAgeAggregate::removed);
+        studentNameIndex.remove(id);
     }
 
     public List<Student> getAllStudents() {
@@ -57,35 +128,92 @@ public class StudentService {
         return studentRepository.findAll();
     }
 
+    /**
+     * Writes all students to the stream while they are read, keeping memory flat however many there are.
+     */
+    @Transactional
+    public void writeAllStudents(OutputStream out, JsonStreamWriter.Format format) throws IOException {
+        logger.info("Was invoked method to stream all students");
+
+        try (Stream<Student> students = studentRepository.streamAll()) {
+            jsonStreamWriter.write(students, out, format);
+        }
+    }
+
+    /**
+     * A page of students ordered by the sort key and then by id, continuing after the cursor from the previous
+     * page. Each page is a seek on the matching index, so deep pages cost as much as the first one. Students
+     * without a name are not part of the name order.
+     */
+    public CursorPage<Student> getStudentsPage(StudentSort sort, int limit, String cursor) {
+        logger.info("Was invoked method to get a page of students");
+
+        int pageSize = CursorPages.pageSize(limit);
+        PageCursor after = PageCursor.decode(cursor);
+        Pageable page = PageRequest.of(0, pageSize);
+
+        List<Student> students = switch (sort) {
+            case ID -> studentRepository.findPageById(after.id(), page);
+            case NAME -> studentRepository.findPageByName(after.key(), after.id(), page);
+            case AGE -> studentRepository.findPageByAge(
+                    after.equals(PageCursor.FIRST) ? Integer.MIN_VALUE : after.intKey(), after.id(), page
+            );
+        };
+
+        return CursorPages.of(students, pageSize, student -> new PageCursor(switch (sort) {
+            case ID -> "";
+            case NAME -> student.getName();
+            case AGE -> String.valueOf(student.getAge());
+        }, student.getId()));
+    }
+
     public List<String> getStudentsStartWithCharA() {
         logger.info("Was invoked method to get all students start with A char");
 
-        return studentRepository
-                .findAll()
-                .stream()
-                .filter(student -> student
-                        .getName()
-                        .startsWith("A")
-                )
-                .map(student -> student
-                        .getName()
-                        .toUpperCase()
-                )
-                .sorted()
-                .collect(Collectors.toList());
+        List<String> names = new ArrayList<>();
+        PageCursor cursor = PageCursor.FIRST;
+        List<StudentNameEntry> page;
+
+        do {
+            page = findNamePage("a", cursor, CursorPages.MAX_PAGE_SIZE);
+            page.stream()
+                    .map(StudentNameEntry::name)
+                    .filter(name -> name.startsWith("A"))
+                    .map(String::toUpperCase)
+                    .forEach(names::add);
+
+            if (!page.isEmpty()) {
+                cursor = cursorAfter(page.get(page.size() - 1));
+            }
+        } while (page.size() == CursorPages.MAX_PAGE_SIZE);
+
+        return names.stream().sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Students whose name starts with the prefix, ignoring case, ordered by name. Pages hold at most
+     * {@value CursorPages#MAX_PAGE_SIZE} students and continue from the cursor returned with the previous page.
+     */
+    public StudentNamePage getStudentsByNamePrefix(String prefix, int limit, String cursor) {
+        logger.info("Was invoked method to get students by name prefix");
+
+        int pageSize = CursorPages.pageSize(limit);
+        List<StudentNameEntry> students = findNamePage(StudentNameIndex.normalize(prefix), PageCursor.decode(cursor), pageSize);
+        String nextCursor = students.size() == pageSize ? cursorAfter(students.get(pageSize - 1)).encode() : null;
+
+        return new StudentNamePage(students, nextCursor);
     }
 
     public Integer getAverageAge() {
         logger.info("Was invoked method to get students average age");
 
-        List<Student> students = studentRepository.findAll();
+        return studentAgeAggregate.averageAge();
+    }
+
+    public StudentAgeStats getAgeStats() {
+        logger.info("Was invoked method to get students age statistics");
 
-        return students
-                .stream()
-                .map(Student::getAge)
-                .reduce(Integer::sum)
-                .map(sum -> sum / students.size())
-                .orElse(0);
+        return studentAgeAggregate.stats();
     }
 
     public List<Student> getStudentsByAge(int age) {
@@ -115,7 +243,7 @@ public class StudentService {
     public int getStudentsAverageAge() {
         logger.info("Was invoked method to get all students average age");
 
-        return studentRepository.getAverageStudentsAge();
+        return studentAgeAggregate.averageAge();
     }
 
     public List<Student> getLastStudentsInList() {
@@ -149,6 +277,20 @@ public class StudentService {
         }).start();
     }
 
+    private List<StudentNameEntry> findNamePage(String lowerPrefix, PageCursor after, int limit) {
+        if (studentNameIndex.isReady()) {
+            return studentNameIndex.findByPrefix(lowerPrefix, after, limit);
+        }
+
+        String pattern = lowerPrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+
+        return studentRepository.findByNamePrefix(pattern, after.key(), after.id(), PageRequest.of(0, limit));
+    }
+
+    private static PageCursor cursorAfter(StudentNameEntry student) {
+        return new PageCursor(StudentNameIndex.normalize(student.name()), student.id());
+    }
+
     private synchronized void printStudentNameSynchronized(String studentName) {
         System.out.println(studentName);
     }
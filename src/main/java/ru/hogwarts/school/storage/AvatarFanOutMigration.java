@@ -0,0 +1,85 @@
+package ru.hogwarts.school.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Moves avatar files from the flat avatars folder into the fan-out directories of {@link FileSystemAvatarStore}.
+ * Runs when the application is launched with {@code --migrate-avatars-to-fan-out}, on a background thread
+ * and in batches, so avatars keep being served and uploaded meanwhile; a stopped run is resumed by starting
+ * the application with the option again. The paths recorded on avatar and blob rows follow the moved files.
+ */
+@Component
+public class AvatarFanOutMigration implements ApplicationRunner {
+    private static final String OPTION = "migrate-avatars-to-fan-out";
+
+    private final FileSystemAvatarStore fileSystemAvatarStore;
+    private final AvatarRepository avatarRepository;
+    private final AvatarBlobRepository avatarBlobRepository;
+    private final int batchSize;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarFanOutMigration.class);
+
+    public AvatarFanOutMigration(
+            FileSystemAvatarStore fileSystemAvatarStore,
+            AvatarRepository avatarRepository,
+            AvatarBlobRepository avatarBlobRepository,
+            @Value("${avatar.store.filesystem.migration-batch-size:500}") int batchSize
+    ) {
+        this.fileSystemAvatarStore = fileSystemAvatarStore;
+        this.avatarRepository = avatarRepository;
+        this.avatarBlobRepository = avatarBlobRepository;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+
+        Thread thread = new Thread(this::migrate, "avatar-fan-out-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void migrate() {
+        logger.info("Moving avatar files into fan-out directories");
+        long startedAt = System.nanoTime();
+        long moved = 0;
+        long duplicates = 0;
+
+        try {
+            List<FileSystemAvatarStore.Relocation> relocations;
+
+            while (!(relocations = fileSystemAvatarStore.migrateToFanOut(batchSize)).isEmpty()) {
+                for (FileSystemAvatarStore.Relocation relocation : relocations) {
+                    avatarBlobRepository.replaceFilePath(relocation.key(), relocation.from(), relocation.to());
+                    avatarRepository.replaceFilePath(relocation.key(), relocation.from(), relocation.to());
+
+                    if (relocation.duplicate()) {
+                        duplicates++;
+                    } else {
+                        moved++;
+                    }
+                }
+
+                logger.info("Moved {} avatar files into fan-out directories and removed {} flat duplicates so far", moved, duplicates);
+            }
+
+            logger.info("Moved {} avatar files into fan-out directories and removed {} flat duplicates in {} ms",
+                    moved, duplicates, (System.nanoTime() - startedAt) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Avatar fan-out migration stopped after {} files, run it again to resume", moved + duplicates, e);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ru.hogwarts.school.storage;
+
+import java.nio.file.Path;
+
+public record AvatarRegion(Path file, long offset, long length) {
+}
@@ -0,0 +1,48 @@
+package ru.hogwarts.school.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Copies avatars from the per-file layout of the avatars folder into the segment store.
+ * Runs on startup when the application is launched with {@code --migrate-avatars-to-segments};
+ * source files are left in place and already migrated keys are skipped, so the run can be repeated.
+ */
+@Component
+public class AvatarSegmentMigration implements ApplicationRunner {
+    private static final String OPTION = "migrate-avatars-to-segments";
+
+    private final ObjectProvider<SegmentAvatarStore> segmentAvatarStore;
+    private final Path avatarsDir;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarSegmentMigration.class);
+
+    public AvatarSegmentMigration(
+            ObjectProvider<SegmentAvatarStore> segmentAvatarStore,
+            @Value("${path.to.avatars.folder}") String avatarsDir
+    ) {
+        this.segmentAvatarStore = segmentAvatarStore;
+        this.avatarsDir = Path.of(avatarsDir);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+
+        logger.info("Migrating avatar files from {} into segments", avatarsDir);
+        long startedAt = System.nanoTime();
+
+        int imported = segmentAvatarStore.getObject().importFiles(avatarsDir);
+
+        logger.info("Migrated {} avatar files into segments in {} ms", imported, (System.nanoTime() - startedAt) / 1_000_000);
+    }
+}
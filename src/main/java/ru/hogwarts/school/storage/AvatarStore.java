@@ -0,0 +1,49 @@
+package ru.hogwarts.school.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps avatar content addressed by a key (the SHA-256 digest of the content).
+ */
+public interface AvatarStore {
+    /**
+     * Stores the content under the key, replacing anything stored under it before.
+     *
+     * @return a human-readable location of the stored content
+     */
+    String write(String key, byte[] data) throws IOException;
+
+    /**
+     * Stores the content of a local file under the key, replacing anything stored under it before.
+     * Stores that keep content in local files copy it over without reading it into the heap.
+     *
+     * @return a human-readable location of the stored content
+     */
+    default String write(String key, Path source) throws IOException {
+        return write(key, Files.readAllBytes(source));
+    }
+
+    Optional<byte[]> read(String key) throws IOException;
+
+    boolean contains(String key) throws IOException;
+
+    /**
+     * Locates the content as a region of a local file, so it can be sent without copying it through the heap.
+     * Stores that do not keep content in local files return an empty optional.
+     */
+    default Optional<AvatarRegion> locate(String key) throws IOException {
+        return Optional.empty();
+    }
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Lists stored keys in ascending order, starting after the given key ({@code ""} for the first page),
+     * so the whole store can be walked in bounded pages.
+     */
+    List<String> keys(String afterKey, int limit) throws IOException;
+}
@@ -0,0 +1,62 @@
+package ru.hogwarts.school.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+public class AvatarStoreConfiguration {
+    private static final Logger logger = LoggerFactory.getLogger(AvatarStoreConfiguration.class);
+
+    private final FileSystemAvatarStore fileSystemAvatarStore;
+    private final DatabaseAvatarStore databaseAvatarStore;
+    private final ObjectStoreAvatarStore objectStoreAvatarStore;
+    private final ObjectProvider<SegmentAvatarStore> segmentAvatarStore;
+
+    public AvatarStoreConfiguration(
+            FileSystemAvatarStore fileSystemAvatarStore,
+            DatabaseAvatarStore databaseAvatarStore,
+            ObjectStoreAvatarStore objectStoreAvatarStore,
+            ObjectProvider<SegmentAvatarStore> segmentAvatarStore
+    ) {
+        this.fileSystemAvatarStore = fileSystemAvatarStore;
+        this.databaseAvatarStore = databaseAvatarStore;
+        this.objectStoreAvatarStore = objectStoreAvatarStore;
+        this.segmentAvatarStore = segmentAvatarStore;
+    }
+
+    /**
+     * The store avatar content is read from and written to. Leaving {@code avatar.store.secondary} empty
+     * keeps a single copy; naming a second store makes every write go to both.
+     */
+    @Bean
+    @Primary
+    public AvatarStore avatarStore(
+            @Value("${avatar.store.primary:filesystem}") String primary,
+            @Value("${avatar.store.secondary:}") String secondary
+    ) {
+        if (secondary.isBlank()) {
+            logger.info("Avatar content is stored in a single {} store", primary);
+
+            return resolve(primary);
+        }
+
+        logger.info("Avatar content is written to both {} and {} stores", primary, secondary);
+
+        return new ReplicatedAvatarStore(resolve(primary), resolve(secondary));
+    }
+
+    private AvatarStore resolve(String name) {
+        return switch (name) {
+            case "filesystem" -> fileSystemAvatarStore;
+            case "database" -> databaseAvatarStore;
+            case "object" -> objectStoreAvatarStore;
+            case "segment" -> segmentAvatarStore.getObject();
+            default -> throw new IllegalArgumentException("Unknown avatar store: " + name);
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package ru.hogwarts.school.storage;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.hogwarts.school.model.AvatarContent;
+import ru.hogwarts.school.repository.AvatarContentRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Component
+public class DatabaseAvatarStore implements AvatarStore {
+    private final AvatarContentRepository avatarContentRepository;
+
+    public DatabaseAvatarStore(AvatarContentRepository avatarContentRepository) {
+        this.avatarContentRepository = avatarContentRepository;
+    }
+
+    @Override
+    public String write(String key, byte[] data) {
+        AvatarContent content = new AvatarContent();
+        content.setDigest(key);
+        content.setData(data);
+
+        avatarContentRepository.save(content);
+
+        return "db:" + key;
+    }
+
+    @Override
+    public Optional<byte[]> read(String key) {
+        return avatarContentRepository.findById(key).map(AvatarContent::getData);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return avatarContentRepository.existsById(key);
+    }
+
+    @Override
+    public void delete(String key) {
+        avatarContentRepository.findById(key).ifPresent(avatarContentRepository::delete);
+    }
+
+    @Override
+    public List<String> keys(String afterKey, int limit) {
+        return avatarContentRepository.findDigestsAfter(afterKey, PageRequest.of(0, limit));
+    }
+}
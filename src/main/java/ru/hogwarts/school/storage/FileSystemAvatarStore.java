@@ -0,0 +1,254 @@
+package ru.hogwarts.school.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Keeps every avatar in a file of its own under the avatars folder. With {@code avatar.store.filesystem.fan-out}
+ * above zero new files go into that many levels of two-character subdirectories, e.g. {@code ab/cd/abcd...},
+ * so no directory grows beyond a few thousand entries. Files are looked up in both the nested and the flat
+ * layout, which lets {@link #migrateToFanOut(int)} move them over while the application keeps serving.
+ */
+@Component
+public class FileSystemAvatarStore implements AvatarStore {
+    private static final Pattern HEX_KEY = Pattern.compile("[0-9a-f]+");
+    private static final Pattern CONTENT_KEY = Pattern.compile("[0-9a-f]{64}(-\\d+|-opt)?");
+
+    private final Path root;
+    private final int fanOut;
+    private final StoreDirectories.FlatListing flatListing;
+    // Serialize deleting a key with moving it between layouts.
+    private final ReentrantLock[] keyLocks = new ReentrantLock[64];
+
+    public FileSystemAvatarStore(
+            @Value("${path.to.avatars.folder}") String avatarsDir,
+            @Value("${avatar.store.filesystem.fan-out:0}") int fanOut
+    ) {
+        this.root = Path.of(avatarsDir);
+        this.fanOut = fanOut;
+        this.flatListing = new StoreDirectories.FlatListing(root);
+
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public String write(String key, byte[] data) throws IOException {
+        return write(key, tempPath -> Files.write(tempPath, data));
+    }
+
+    @Override
+    public String write(String key, Path source) throws IOException {
+        return write(key, tempPath -> Files.copy(source, tempPath, REPLACE_EXISTING));
+    }
+
+    @Override
+    public Optional<byte[]> read(String key) throws IOException {
+        Optional<Path> filePath = find(key);
+
+        return filePath.isPresent() ? Optional.of(Files.readAllBytes(filePath.get())) : Optional.empty();
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return find(key).isPresent();
+    }
+
+    @Override
+    public Optional<AvatarRegion> locate(String key) throws IOException {
+        Optional<Path> filePath = find(key);
+
+        return filePath.isPresent()
+                ? Optional.of(new AvatarRegion(filePath.get(), 0, Files.size(filePath.get())))
+                : Optional.empty();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        ReentrantLock lock = lockFor(key);
+
+        lock.lock();
+
+        try {
+            Files.deleteIfExists(resolve(key));
+            Files.deleteIfExists(root.resolve(key));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists the files of the flat layout together with those of the fan-out directories; see
+     * {@link StoreDirectories} for how either is paged without reading the whole store every time.
+     */
+    @Override
+    public List<String> keys(String afterKey, int limit) throws IOException {
+        List<String> flatKeys = flatListing.keys(afterKey, limit);
+
+        if (fanOut == 0) {
+            return flatKeys;
+        }
+
+        TreeSet<String> keys = new TreeSet<>(flatKeys);
+        keys.addAll(StoreDirectories.fanOutKeys(root, fanOut, afterKey, limit));
+
+        return keys.stream().limit(limit).toList();
+    }
+
+    /**
+     * Moves up to {@code limit} content files from the flat layout into the fan-out directories. A file already
+     * present in its new place is a copy of the same content and is just removed. Moved files leave the flat
+     * directory, so an interrupted migration picks up where it stopped when it is run again. Legacy files
+     * named after a student are referenced by their path and stay where they are. Each file is moved under
+     * its key's lock, so a concurrent {@link #delete(String)} cannot miss it between the two layouts.
+     *
+     * @return the files that left the flat layout; empty once nothing is left to move
+     */
+    public List<Relocation> migrateToFanOut(int limit) throws IOException {
+        if (fanOut == 0 || !Files.isDirectory(root)) {
+            return List.of();
+        }
+
+        List<Relocation> relocations = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                String key = file.getFileName().toString();
+
+                if (!CONTENT_KEY.matcher(key).matches()) {
+                    continue;
+                }
+
+                Path target = resolve(key);
+                ReentrantLock lock = lockFor(key);
+
+                Files.createDirectories(target.getParent());
+                lock.lock();
+
+                try {
+                    // Deleted or already moved since the directory was listed.
+                    if (!Files.isRegularFile(file)) {
+                        continue;
+                    }
+
+                    boolean duplicate = Files.exists(target);
+
+                    if (duplicate) {
+                        Files.delete(file);
+                    } else {
+                        Files.move(file, target, ATOMIC_MOVE);
+                    }
+
+                    relocations.add(new Relocation(key, file.toString(), target.toString(), duplicate));
+                } finally {
+                    lock.unlock();
+                }
+
+                if (relocations.size() == limit) {
+                    break;
+                }
+            }
+        }
+
+        return relocations;
+    }
+
+    private String write(String key, ContentWriter writer) throws IOException {
+        Path filePath = resolve(key);
+        Path directory = filePath.getParent();
+
+        Files.createDirectories(directory);
+
+        // Readers and concurrent writers of the same key only ever see a complete file.
+        Path tempPath = Files.createTempFile(directory, key, ".part");
+
+        try {
+            writer.write(tempPath);
+            Files.move(tempPath, filePath, ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        return filePath.toString();
+    }
+
+    private Optional<Path> find(String key) {
+        Path filePath = resolve(key);
+
+        if (Files.exists(filePath)) {
+            return Optional.of(filePath);
+        }
+
+        Path flatPath = root.resolve(key);
+
+        if (Files.exists(flatPath)) {
+            return Optional.of(flatPath);
+        }
+
+        // The file may have been moved by the migration between the two checks above.
+        return Files.exists(filePath) ? Optional.of(filePath) : Optional.empty();
+    }
+
+    private ReentrantLock lockFor(String key) {
+        return keyLocks[key.hashCode() & (keyLocks.length - 1)];
+    }
+
+    private Path resolve(String key) {
+        if (fanOut == 0) {
+            return root.resolve(key);
+        }
+
+        // Content keys start with their digest already; any other key is spread by a digest of its own.
+        String prefix = key.length() >= fanOut * 2 && HEX_KEY.matcher(key.substring(0, fanOut * 2)).matches()
+                ? key
+                : sha256(key);
+        Path directory = root;
+
+        for (int level = 0; level < fanOut; level++) {
+            directory = directory.resolve(prefix.substring(level * 2, level * 2 + 2));
+        }
+
+        return directory.resolve(key);
+    }
+
+    /**
+     * A content file that left the flat layout for {@code to}; when the fan-out copy already existed, the flat
+     * {@code from} was a {@code duplicate} and was removed instead of moved.
+     */
+    public record Relocation(String key, String from, String to, boolean duplicate) {
+    }
+
+    private static String sha256(String key) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8))
+            );
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContentWriter {
+        void write(Path tempPath) throws IOException;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.hogwarts.school.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Directory-backed stand-in for an S3-like object store: objects are put atomically and are only ever
+ * read back whole, so the store does not expose local file regions.
+ */
+@Component
+public class ObjectStoreAvatarStore implements AvatarStore {
+    private final String bucketName;
+    private final Path bucket;
+    private final StoreDirectories.FlatListing listing;
+
+    public ObjectStoreAvatarStore(
+            @Value("${avatar.store.object.root:./object-store}") String root,
+            @Value("${avatar.store.object.bucket:avatars}") String bucketName
+    ) {
+        this.bucketName = bucketName;
+        this.bucket = Path.of(root, bucketName);
+        this.listing = new StoreDirectories.FlatListing(bucket);
+    }
+
+    @Override
+    public String write(String key, byte[] data) throws IOException {
+        Files.createDirectories(bucket);
+
+        Path part = Files.createTempFile(bucket, key, ".part");
+
+        try {
+            Files.write(part, data);
+            Files.move(part, bucket.resolve(key), ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+
+        return "object://" + bucketName + "/" + key;
+    }
+
+    @Override
+    public Optional<byte[]> read(String key) throws IOException {
+        Path object = bucket.resolve(key);
+
+        return Files.exists(object) ? Optional.of(Files.readAllBytes(object)) : Optional.empty();
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return Files.exists(bucket.resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(bucket.resolve(key));
+    }
+
+    @Override
+    public List<String> keys(String afterKey, int limit) throws IOException {
+        return listing.keys(afterKey, limit);
+    }
+}
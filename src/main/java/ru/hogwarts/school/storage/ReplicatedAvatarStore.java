@@ -0,0 +1,73 @@
+package ru.hogwarts.school.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Dual-write store: content goes to both stores, reads are served by the primary and fall back to the secondary.
+ */
+public class ReplicatedAvatarStore implements AvatarStore {
+    private final AvatarStore primary;
+    private final AvatarStore secondary;
+
+    public ReplicatedAvatarStore(AvatarStore primary, AvatarStore secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+    @Override
+    public String write(String key, byte[] data) throws IOException {
+        String location = primary.write(key, data);
+        secondary.write(key, data);
+
+        return location;
+    }
+
+    @Override
+    public String write(String key, Path source) throws IOException {
+        String location = primary.write(key, source);
+        secondary.write(key, source);
+
+        return location;
+    }
+
+    @Override
+    public Optional<byte[]> read(String key) throws IOException {
+        Optional<byte[]> data = primary.read(key);
+
+        return data.isPresent() ? data : secondary.read(key);
+    }
+
+    @Override
+    public boolean contains(String key) throws IOException {
+        return primary.contains(key) || secondary.contains(key);
+    }
+
+    @Override
+    public Optional<AvatarRegion> locate(String key) throws IOException {
+        Optional<AvatarRegion> region = primary.locate(key);
+
+        return region.isPresent() ? region : secondary.locate(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        primary.delete(key);
+        secondary.delete(key);
+    }
+
+    /**
+     * Lists the keys of both stores, so content left only in the secondary is visited as well;
+     * deleting one of them removes it from both stores.
+     */
+    @Override
+    public List<String> keys(String afterKey, int limit) throws IOException {
+        TreeSet<String> keys = new TreeSet<>(primary.keys(afterKey, limit));
+        keys.addAll(secondary.keys(afterKey, limit));
+
+        return keys.stream().limit(limit).toList();
+    }
+}
@@ -0,0 +1,457 @@
+package ru.hogwarts.school.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only avatar store that packs content into large segment files instead of one file per avatar.
+ * <p>
+ * Every write appends a record to the active segment; an in-memory index maps keys to the offset of their
+ * latest record and is rebuilt by replaying the segments on startup. Reads of sealed segments are served from
+ * a read-only memory mapping made once, reads of the still growing active segment with positional reads,
+ * and downloads can send the region straight from the segment file.
+ * Deletes append tombstones, and a background task rewrites segments that are mostly dead.
+ * <p>
+ * Record layout: magic (int), type (byte), key length (short), data length (int), CRC32 of key and data (int),
+ * key (UTF-8), data.
+ */
+@Lazy
+@Component
+public class SegmentAvatarStore implements AvatarStore {
+    private static final int MAGIC = 0x41565053;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 15;
+    private static final byte[] NO_DATA = new byte[0];
+    private static final Pattern CONTENT_KEY_FILE = Pattern.compile("([0-9a-f]{64}(?:-\\d+|-opt)?)(?:\\.\\w+)?");
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final double compactionRatio;
+    private final boolean sync;
+
+    private final ConcurrentNavigableMap<String, Entry> index = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final List<Segment> retired = new ArrayList<>();
+    private final ScheduledExecutorService compactor;
+    private Segment active;
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentAvatarStore.class);
+
+    public SegmentAvatarStore(
+            @Value("${avatar.store.segment.dir:./src/main/resources/images/segments}") String directory,
+            @Value("${avatar.store.segment.max-bytes:268435456}") long maxSegmentBytes,
+            @Value("${avatar.store.segment.compaction-ratio:0.5}") double compactionRatio,
+            @Value("${avatar.store.segment.compaction-interval-seconds:600}") long compactionIntervalSeconds,
+            @Value("${avatar.store.segment.sync:true}") boolean sync
+    ) throws IOException {
+        this.directory = Path.of(directory);
+        this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+        this.compactionRatio = compactionRatio;
+        this.sync = sync;
+
+        open();
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avatar-segment-compactor");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Avatar segment compaction failed", e);
+            }
+        }, compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public String write(String key, byte[] data) throws IOException {
+        Entry entry;
+
+        synchronized (this) {
+            entry = append(PUT, key, data);
+            markDead(index.put(key, entry));
+        }
+
+        return segments.get(entry.segmentId()).path + "#" + entry.offset();
+    }
+
+    @Override
+    public Optional<byte[]> read(String key) throws IOException {
+        Entry entry = index.get(key);
+
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        byte[] data = new byte[entry.length()];
+        segments.get(entry.segmentId()).slice(entry.offset(), entry.length()).get(data);
+
+        return Optional.of(data);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public Optional<AvatarRegion> locate(String key) {
+        Entry entry = index.get(key);
+
+        return entry == null
+                ? Optional.empty()
+                : Optional.of(new AvatarRegion(segments.get(entry.segmentId()).path, entry.offset(), entry.length()));
+    }
+
+    @Override
+    public synchronized void delete(String key) throws IOException {
+        Entry previous = index.remove(key);
+
+        if (previous != null) {
+            markDead(previous);
+            markDead(append(DELETE, key, NO_DATA));
+        }
+    }
+
+    @Override
+    public List<String> keys(String afterKey, int limit) {
+        return index.tailMap(afterKey, false).keySet().stream()
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Rewrites the live records of sealed segments whose dead share exceeds the compaction ratio into the
+     * active segment. Segments compacted by the previous run are deleted now, once readers that looked them
+     * up before had time to finish.
+     */
+    public synchronized void compact() throws IOException {
+        for (Segment segment : retired) {
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        }
+
+        retired.clear();
+
+        List<Segment> candidates = segments.values().stream()
+                .filter(segment -> segment != active && segment.deadBytes.get() > segment.size * compactionRatio)
+                .toList();
+
+        for (Segment segment : candidates) {
+            boolean oldest = segment.id == segments.firstKey();
+
+            scan(segment, (type, key, dataOffset, dataLength) -> {
+                if (type == PUT) {
+                    Entry entry = index.get(key);
+
+                    if (entry != null && entry.segmentId() == segment.id && entry.offset() == dataOffset) {
+                        byte[] data = new byte[dataLength];
+                        segment.slice(dataOffset, dataLength).get(data);
+                        index.put(key, append(PUT, key, data));
+                    }
+                } else if (!oldest && !index.containsKey(key)) {
+                    // An older segment may still hold a put for this key, so the tombstone has to survive.
+                    markDead(append(DELETE, key, NO_DATA));
+                }
+            });
+
+            retired.add(segment);
+            logger.info("Compacted avatar segment {}", segment.path.getFileName());
+        }
+    }
+
+    /**
+     * Copies avatar files from a per-file directory into this store. Files named by their content key, with or
+     * without an extension, keep that key; files of the per-student layout ({@code {studentId}.{ext}}) are
+     * stored under the SHA-256 of their content, which is the key their blob is given when migrated.
+     *
+     * @return the number of files copied
+     */
+    public int importFiles(Path sourceDirectory) throws IOException {
+        int imported = 0;
+        Path ownDirectory = directory.toAbsolutePath().normalize();
+
+        // Walks the fan-out directories of the file system store as well as its flat layout.
+        try (Stream<Path> files = Files.walk(sourceDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+
+                if (!Files.isRegularFile(file) || name.endsWith(".part")
+                        || file.toAbsolutePath().normalize().startsWith(ownDirectory)) {
+                    continue;
+                }
+
+                Matcher contentKey = CONTENT_KEY_FILE.matcher(name);
+
+                if (contentKey.matches()) {
+                    if (!contains(contentKey.group(1))) {
+                        write(contentKey.group(1), Files.readAllBytes(file));
+                        imported++;
+                    }
+
+                    continue;
+                }
+
+                byte[] data = Files.readAllBytes(file);
+                String key = HexFormat.of().formatHex(sha256().digest(data));
+
+                if (!contains(key)) {
+                    write(key, data);
+                    imported++;
+                }
+            }
+        }
+
+        return imported;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        compactor.shutdown();
+
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> paths = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.pack")) {
+            files.forEach(paths::add);
+        }
+
+        paths.sort(Comparator.naturalOrder());
+
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            Segment segment = new Segment(Integer.parseInt(name.substring(8, name.length() - 5)), path);
+
+            segments.put(segment.id, segment);
+            load(segment);
+        }
+
+        active = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+
+        for (Segment segment : segments.values()) {
+            if (segment != active) {
+                segment.seal();
+            }
+        }
+
+        logger.info("Opened {} avatar segments with {} entries", segments.size(), index.size());
+    }
+
+    private void load(Segment segment) throws IOException {
+        long end = scan(segment, (type, key, dataOffset, dataLength) -> {
+            if (type == PUT) {
+                markDead(index.put(key, new Entry(segment.id, dataOffset, dataLength)));
+            } else {
+                markDead(index.remove(key));
+                segment.deadBytes.addAndGet(HEADER_SIZE + key.getBytes(UTF_8).length);
+            }
+        });
+
+        if (end < segment.channel.size()) {
+            logger.warn("Truncating incomplete tail of avatar segment {} at {}", segment.path.getFileName(), end);
+            segment.channel.truncate(end);
+        }
+
+        segment.size = end;
+    }
+
+    /**
+     * Visits the valid records of a segment in order.
+     *
+     * @return the offset right after the last valid record
+     */
+    private long scan(Segment segment, RecordVisitor visitor) throws IOException {
+        long size = segment.channel.size();
+        long position = 0;
+
+        while (position + HEADER_SIZE <= size) {
+            ByteBuffer header = segment.slice(position, HEADER_SIZE);
+
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+
+            byte type = header.get();
+            int keyLength = Short.toUnsignedInt(header.getShort());
+            int dataLength = header.getInt();
+            int checksum = header.getInt();
+            long dataOffset = position + HEADER_SIZE + keyLength;
+
+            if (dataLength < 0 || dataOffset + dataLength > size) {
+                break;
+            }
+
+            ByteBuffer keyAndData = segment.slice(position + HEADER_SIZE, keyLength + dataLength);
+            CRC32 crc = new CRC32();
+            crc.update(keyAndData.duplicate());
+
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            byte[] key = new byte[keyLength];
+            keyAndData.get(key);
+            visitor.visit(type, new String(key, UTF_8), dataOffset, dataLength);
+
+            position = dataOffset + dataLength;
+        }
+
+        return position;
+    }
+
+    private Entry append(byte type, String key, byte[] data) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        long recordSize = HEADER_SIZE + keyBytes.length + data.length;
+
+        if (active.size > 0 && active.size + recordSize > maxSegmentBytes) {
+            Segment sealed = active;
+            active = createSegment(active.id + 1);
+            sealed.seal();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(data);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length)
+                .putInt(MAGIC)
+                .put(type)
+                .putShort((short) keyBytes.length)
+                .putInt(data.length)
+                .putInt((int) crc.getValue())
+                .put(keyBytes)
+                .flip();
+        ByteBuffer body = ByteBuffer.wrap(data);
+        ByteBuffer[] record = {header, body};
+
+        long position = active.size;
+        active.channel.position(position);
+
+        while (header.hasRemaining() || body.hasRemaining()) {
+            active.channel.write(record);
+        }
+
+        if (sync) {
+            active.channel.force(false);
+        }
+
+        active.size += recordSize;
+
+        return new Entry(active.id, position + HEADER_SIZE + keyBytes.length, data.length);
+    }
+
+    private void markDead(Entry entry) {
+        if (entry != null) {
+            Segment segment = segments.get(entry.segmentId());
+
+            if (segment != null) {
+                segment.deadBytes.addAndGet(HEADER_SIZE + entry.length());
+            }
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, directory.resolve("segment-%06d.pack".formatted(id)));
+        segments.put(id, segment);
+
+        return segment;
+    }
+
+    private record Entry(int segmentId, long offset, int length) {
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(byte type, String key, long dataOffset, int dataLength) throws IOException;
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong deadBytes = new AtomicLong();
+        private volatile MappedByteBuffer mapping;
+        private long size;
+
+        private Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        }
+
+        /**
+         * Returns a read-only view of the region. Sealed segments no longer grow and are mapped once;
+         * the active segment is read with a positional read, so appends never force a remap of the whole file.
+         */
+        private ByteBuffer slice(long offset, int length) throws IOException {
+            MappedByteBuffer current = mapping;
+
+            if (current != null) {
+                return current.slice((int) offset, length);
+            }
+
+            ByteBuffer region = ByteBuffer.allocate(length);
+
+            while (region.hasRemaining()) {
+                if (channel.read(region, offset + region.position()) < 0) {
+                    throw new EOFException("Avatar segment %s ends before %d".formatted(path.getFileName(), offset + length));
+                }
+            }
+
+            return region.flip().asReadOnlyBuffer();
+        }
+
+        private void seal() throws IOException {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
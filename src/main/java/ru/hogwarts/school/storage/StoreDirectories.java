@@ -0,0 +1,151 @@
+package ru.hogwarts.school.storage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+final class StoreDirectories {
+    private static final Pattern FAN_OUT_DIRECTORY = Pattern.compile("[0-9a-f]{2}");
+
+    private StoreDirectories() {
+    }
+
+    /**
+     * Returns the smallest content keys that sort after {@code afterKey} from {@code fanOut} levels of
+     * two-character directories, where a key starting with {@code abcd...} lives in {@code ab/cd}. The
+     * directories are walked in name order from the cursor's prefix on, and the walk stops at the first
+     * directory whose keys all sort after the page, so a page costs a few directory reads rather than a walk
+     * of the whole tree. Files whose name does not start with their directory's prefix were placed by a
+     * digest of the name and are not listed.
+     */
+    static List<String> fanOutKeys(Path root, int fanOut, String afterKey, int limit) throws IOException {
+        TreeSet<String> smallest = new TreeSet<>();
+
+        if (Files.isDirectory(root)) {
+            collect(root, fanOut, "", afterKey, limit, smallest);
+        }
+
+        return List.copyOf(smallest);
+    }
+
+    private static boolean collect(
+            Path directory,
+            int levels,
+            String prefix,
+            String afterKey,
+            int limit,
+            TreeSet<String> smallest
+    ) throws IOException {
+        if (levels == 0) {
+            for (String name : list(directory, false)) {
+                if (name.startsWith(prefix) && name.compareTo(afterKey) > 0) {
+                    add(smallest, name, limit);
+                }
+            }
+
+            return true;
+        }
+
+        for (String child : list(directory, true)) {
+            String childPrefix = prefix + child;
+
+            // Every key below the child starts with its prefix, so it is compared with the same number of characters.
+            if (childPrefix.compareTo(head(afterKey, childPrefix.length())) < 0) {
+                continue;
+            }
+
+            if (smallest.size() == limit && childPrefix.compareTo(head(smallest.last(), childPrefix.length())) > 0) {
+                return false;
+            }
+
+            if (!collect(directory.resolve(child), levels - 1, childPrefix, afterKey, limit, smallest)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static List<String> list(Path directory, boolean fanOutDirectories) throws IOException {
+        List<String> names = new ArrayList<>();
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+
+                if (fanOutDirectories
+                        ? FAN_OUT_DIRECTORY.matcher(name).matches() && Files.isDirectory(entry)
+                        : !name.endsWith(".part") && Files.isRegularFile(entry)) {
+                    names.add(name);
+                }
+            }
+        }
+
+        Collections.sort(names);
+
+        return names;
+    }
+
+    private static void add(TreeSet<String> smallest, String name, int limit) {
+        smallest.add(name);
+
+        if (smallest.size() > limit) {
+            smallest.pollLast();
+        }
+    }
+
+    private static String head(String key, int length) {
+        return key.length() > length ? key.substring(0, length) : key;
+    }
+
+    /**
+     * Pages through the files of one flat directory in name order. A directory cannot be read from a given
+     * name on, so a pass lists and sorts the names after its starting cursor once, and the following pages
+     * are served from that listing instead of reading the whole directory again. A page asked for at or
+     * before the start of the listing begins a new pass; files added during a pass are listed by the next one.
+     */
+    static final class FlatListing {
+        private final Path directory;
+
+        private String listedAfter;
+        private List<String> names;
+
+        FlatListing(Path directory) {
+            this.directory = directory;
+        }
+
+        synchronized List<String> keys(String afterKey, int limit) throws IOException {
+            if (names == null || afterKey.compareTo(listedAfter) <= 0) {
+                if (!Files.isDirectory(directory)) {
+                    return List.of();
+                }
+
+                names = list(directory, false).stream().filter(name -> name.compareTo(afterKey) > 0).toList();
+                listedAfter = afterKey;
+            }
+
+            int position = Collections.binarySearch(names, afterKey);
+            List<String> page = new ArrayList<>(limit);
+
+            for (int i = position < 0 ? -position - 1 : position + 1; i < names.size() && page.size() < limit; i++) {
+                // Files deleted since the listing are skipped.
+                if (Files.exists(directory.resolve(names.get(i)))) {
+                    page.add(names.get(i));
+                }
+            }
+
+            // The pass is over; later pages of it are empty without listing the directory again.
+            if (page.size() < limit) {
+                names = List.of();
+            }
+
+            return page;
+        }
+    }
+}
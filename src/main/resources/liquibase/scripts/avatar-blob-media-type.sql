@@ -0,0 +1,8 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+ALTER TABLE avatar_blob ADD COLUMN media_type VARCHAR(255);
+
+UPDATE avatar_blob b
+SET media_type = (SELECT MIN(a.media_type) FROM avatar a WHERE a.digest = b.digest)
+WHERE media_type IS NULL;
\ No newline at end of file
@@ -0,0 +1,9 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+ALTER TABLE avatar_blob ADD COLUMN optimized BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- Renditions kept in the database store are known here; the scrubber flags those in other stores.
+UPDATE avatar_blob b
+SET optimized = TRUE
+WHERE EXISTS (SELECT 1 FROM avatar_content c WHERE c.digest = b.digest || '-opt');
\ No newline at end of file
@@ -0,0 +1,26 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+CREATE TABLE avatar_blob (
+    digest VARCHAR(64) PRIMARY KEY,
+    file_path VARCHAR(255),
+    file_size BIGINT NOT NULL,
+    reference_count INTEGER NOT NULL,
+    data OID
+);
+
+-- changeset VioletNeon:2
+UPDATE avatar SET digest = encode(sha256(lo_get(data)), 'hex') WHERE digest IS NULL AND data IS NOT NULL;
+
+INSERT INTO avatar_blob (digest, file_path, file_size, reference_count, data)
+SELECT digest, MIN(file_path), MIN(file_size), COUNT(*), MIN(data)
+FROM avatar
+WHERE digest IS NOT NULL
+GROUP BY digest;
+
+-- Avatars with the same content collapse into one blob; the large objects of the other copies go with the column.
+SELECT lo_unlink(duplicate.data)
+FROM (SELECT DISTINCT data FROM avatar WHERE data IS NOT NULL) duplicate
+WHERE NOT EXISTS (SELECT 1 FROM avatar_blob b WHERE b.data = duplicate.data);
+
+ALTER TABLE avatar DROP COLUMN data;
@@ -0,0 +1,5 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+-- Thumbnails ({digest}-{size}) and optimized renditions ({digest}-opt) are stored under keys longer than a digest.
+ALTER TABLE avatar_content ALTER COLUMN digest TYPE VARCHAR(128);
\ No newline at end of file
@@ -0,0 +1,13 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+CREATE TABLE avatar_content (
+    digest VARCHAR(64) PRIMARY KEY,
+    data OID
+);
+
+-- changeset VioletNeon:2
+INSERT INTO avatar_content (digest, data)
+SELECT digest, data FROM avatar_blob WHERE data IS NOT NULL;
+
+ALTER TABLE avatar_blob DROP COLUMN data;
@@ -0,0 +1,4 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+ALTER TABLE avatar ADD COLUMN digest VARCHAR(64);
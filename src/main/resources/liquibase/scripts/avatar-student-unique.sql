@@ -0,0 +1,12 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+DELETE FROM avatar a
+USING avatar newer
+WHERE a.student_id = newer.student_id
+  AND a.id < newer.id;
+
+UPDATE avatar_blob b
+SET reference_count = (SELECT COUNT(*) FROM avatar a WHERE a.digest = b.digest);
+
+ALTER TABLE avatar ADD CONSTRAINT avatar_student_id_unique UNIQUE (student_id);
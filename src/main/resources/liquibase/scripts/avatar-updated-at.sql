@@ -0,0 +1,4 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+ALTER TABLE avatar ADD COLUMN updated_at TIMESTAMP WITH TIME ZONE;
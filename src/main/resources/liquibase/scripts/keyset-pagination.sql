@@ -0,0 +1,16 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1 runInTransaction:false
+CREATE INDEX CONCURRENTLY student_name_id_index ON student (name, id);
+
+-- changeset VioletNeon:2 runInTransaction:false
+CREATE INDEX CONCURRENTLY student_age_id_index ON student (age, id);
+
+-- changeset VioletNeon:3 runInTransaction:false
+CREATE INDEX CONCURRENTLY student_faculty_id_id_index ON student (faculty_id, id);
+
+-- changeset VioletNeon:4 runInTransaction:false
+CREATE INDEX CONCURRENTLY faculty_name_id_index ON faculty (name, id);
+
+-- changeset VioletNeon:5 runInTransaction:false
+DROP INDEX CONCURRENTLY student_name_index;
\ No newline at end of file
@@ -0,0 +1,5 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1 runInTransaction:false
+-- Matches the "C" collation of the name prefix query, so the index serves both its LIKE and its ORDER BY.
+CREATE INDEX CONCURRENTLY student_name_lower_c_index ON student ((lower(name) COLLATE "C"), id);
\ No newline at end of file
@@ -0,0 +1,7 @@
+-- liquibase formatted sql
+
+-- changeset VioletNeon:1
+CREATE SEQUENCE IF NOT EXISTS student_seq INCREMENT BY 50;
+ALTER SEQUENCE student_seq INCREMENT BY 50;
+-- Only moves forward: ids already handed out from the sequence may be above the current maximum id.
+SELECT setval('student_seq', GREATEST((SELECT last_value FROM student_seq), (SELECT COALESCE(MAX(id), 0) + 1 FROM student)));
\ No newline at end of file
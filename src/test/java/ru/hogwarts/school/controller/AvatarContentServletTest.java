@@ -0,0 +1,101 @@
+package ru.hogwarts.school.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.hogwarts.school.service.AvatarCache;
+import ru.hogwarts.school.service.AvatarService;
+import ru.hogwarts.school.storage.AvatarStore;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvatarContentServletTest {
+    private static final String DIGEST = "a".repeat(64);
+
+    @Mock
+    private AvatarService avatarService;
+
+    @Mock
+    private AvatarStore avatarStore;
+
+    private AvatarContentServlet servlet;
+
+    @BeforeEach
+    void setUp() {
+        servlet = new AvatarContentServlet(avatarService, avatarStore, new AvatarCache(1024 * 1024, false, 100, 300));
+    }
+
+    @Test
+    void doGet_storedContent_servesImmutableResponse() throws IOException {
+        byte[] data = "image data".getBytes();
+        when(avatarService.findContentMediaType(DIGEST)).thenReturn(Optional.of("image/png"));
+        when(avatarStore.read(DIGEST)).thenReturn(Optional.of(data));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        servlet.doGet(request("/" + DIGEST + ".png"), response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, max-age=31536000, immutable");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"" + DIGEST + "\"");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+        assertThat(response.getContentAsByteArray()).isEqualTo(data);
+    }
+
+    @Test
+    void doGet_extensionNotMatchingStoredType_returnsNotFound() throws IOException {
+        when(avatarService.findContentMediaType(DIGEST)).thenReturn(Optional.of("image/png"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        servlet.doGet(request("/" + DIGEST + ".svg"), response);
+
+        assertThat(response.getStatus()).isEqualTo(404);
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+        verifyNoInteractions(avatarStore);
+    }
+
+    @Test
+    void doGet_matchingETag_returnsNotModifiedWithoutReading() throws IOException {
+        when(avatarService.findContentMediaType(DIGEST)).thenReturn(Optional.of("image/png"));
+        MockHttpServletRequest request = request("/" + DIGEST + ".png");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"" + DIGEST + "\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        servlet.doGet(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        verifyNoInteractions(avatarStore);
+    }
+
+    @Test
+    void doGet_unknownOrMalformedKey_returnsNotFound() throws IOException {
+        when(avatarService.findContentMediaType(DIGEST)).thenReturn(Optional.of("image/png"));
+        when(avatarStore.read(DIGEST)).thenReturn(Optional.empty());
+        MockHttpServletResponse missing = new MockHttpServletResponse();
+        MockHttpServletResponse malformed = new MockHttpServletResponse();
+
+        servlet.doGet(request("/" + DIGEST + ".png"), missing);
+        servlet.doGet(request("/../secret.png"), malformed);
+
+        assertThat(missing.getStatus()).isEqualTo(404);
+        assertThat(malformed.getStatus()).isEqualTo(404);
+    }
+
+    private static MockHttpServletRequest request(String pathInfo) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/static/avatars" + pathInfo);
+        request.setServletPath("/static/avatars");
+        request.setPathInfo(pathInfo);
+
+        return request;
+    }
+}
@@ -0,0 +1,47 @@
+package ru.hogwarts.school.controller;
+
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.hogwarts.school.service.AvatarUploadLimits;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvatarUploadSizeFilterTest {
+    private final AvatarUploadSizeFilter filter = new AvatarUploadSizeFilter(new AvatarUploadLimits(1024 * 300, List.of()));
+
+    @Test
+    void doFilter_declaredLengthOverLimit_rejectsBeforeReading() throws ServletException, IOException {
+        MockHttpServletRequest request = upload(new byte[1024 * 400]);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void doFilter_declaredLengthWithinLimit_passesRequestOn() throws ServletException, IOException {
+        MockHttpServletRequest request = upload(new byte[1024 * 100]);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isSameAs(request);
+    }
+
+    private static MockHttpServletRequest upload(byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/avatar/1/avatar");
+        request.setServletPath("/avatar/1/avatar");
+        request.setContent(body);
+
+        return request;
+    }
+}
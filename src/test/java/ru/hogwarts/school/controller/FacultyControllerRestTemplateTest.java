@@ -14,6 +14,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import ru.hogwarts.school.exception.FacultyNotFoundException;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.repository.FacultyRepository;
@@ -288,4 +289,20 @@ public class FacultyControllerRestTemplateTest {
 
         assertThat(result).isEqualTo(expectedStudentList);
     }
+
+    @Test
+    void shouldReturnFacultiesPageByName_ThenReturnThemInNameOrder() {
+        mockFaculty2.setId(facultyController.addFaculty(mockFaculty2));
+        mockFaculty1.setId(facultyController.addFaculty(mockFaculty1));
+
+        ResponseEntity<CursorPage<Faculty>> response = this.restTemplate.exchange(
+                "http://localhost:" + port + "/faculty/page?sort=name",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<CursorPage<Faculty>>() {}
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().items()).containsExactly(mockFaculty1, mockFaculty2);
+    }
 }
@@ -12,17 +12,27 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import ru.hogwarts.school.exception.StudentNotFoundException;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.model.StudentNameEntry;
+import ru.hogwarts.school.model.StudentNamePage;
 import ru.hogwarts.school.repository.FacultyRepository;
 import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.service.StudentAgeAggregate;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -55,10 +65,18 @@ public class StudentControllerRestTemplateTest {
     @Autowired
     private FacultyRepository facultyRepository;
 
+    @Autowired
+    private StudentAgeAggregate studentAgeAggregate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     void setUp() {
         studentRepository.deleteAll();
         facultyRepository.deleteAll();
+        // The repository is cleared around the service, so the age statistics are reloaded.
+        studentAgeAggregate.reconcile();
 
         mockStudent1 = new Student();
         mockStudent1.setName("Ivan Ivanovich Ivanov");
@@ -259,6 +277,144 @@ public class StudentControllerRestTemplateTest {
         assertThat(result).isEqualTo(expectedStudentList);
     }
 
+    @Test
+    void shouldAddStudentsInBulk_ThenReturnTheirIdsInInputOrder() {
+        ResponseEntity<List<Long>> response = this.restTemplate.exchange(
+                "http://localhost:" + port + "/student/bulk",
+                HttpMethod.POST,
+                new HttpEntity<>(List.of(mockStudent1, mockStudent2, mockStudent3)),
+                new ParameterizedTypeReference<List<Long>>() {}
+        );
+
+        List<Long> ids = Objects.requireNonNull(response.getBody());
+
+        assertThat(ids).hasSize(3).doesNotHaveDuplicates();
+        assertThat(studentRepository.findById(ids.get(0))).get().extracting(Student::getName).isEqualTo(mockStudent1.getName());
+        assertThat(studentRepository.findById(ids.get(2))).get().extracting(Student::getName).isEqualTo(mockStudent3.getName());
+    }
+
+    @Test
+    void shouldAddStudentsInBulk_ThenTakeIdsFromPooledSequenceBlocks() {
+        List<Student> students = IntStream.range(0, 120).mapToObj(i -> {
+            Student student = new Student();
+            student.setName("Student " + i);
+            student.setAge(11);
+
+            return student;
+        }).toList();
+        long sequenceBefore = studentSequenceValue();
+
+        ResponseEntity<List<Long>> response = this.restTemplate.exchange(
+                "http://localhost:" + port + "/student/bulk",
+                HttpMethod.POST,
+                new HttpEntity<>(students),
+                new ParameterizedTypeReference<List<Long>>() {}
+        );
+
+        List<Long> ids = Objects.requireNonNull(response.getBody());
+
+        // One sequence call hands out 50 consecutive ids: 120 students take three calls, and the pooled
+        // optimizer makes one more the first time the sequence is used.
+        assertThat(ids).isEqualTo(LongStream.range(0, 120).map(i -> ids.get(0) + i).boxed().toList());
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'STUDENT_SEQ'", Long.class)).isEqualTo(50);
+        assertThat(studentSequenceValue() - sequenceBefore).isLessThanOrEqualTo(4 * 50);
+    }
+
+    @Test
+    void shouldReturnStudentsPagesByName_ThenFollowNextLinkToLastPage() {
+        mockStudent1.setId(studentController.addStudent(mockStudent1));
+        mockStudent2.setId(studentController.addStudent(mockStudent2));
+        mockStudent4.setId(studentController.addStudent(mockStudent4));
+
+        ResponseEntity<CursorPage<Student>> firstPage = this.restTemplate.exchange(
+                "http://localhost:" + port + "/student/page?sort=name&limit=2",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<CursorPage<Student>>() {}
+        );
+
+        String nextLink = firstPage.getHeaders().getFirst(HttpHeaders.LINK);
+
+        assertThat(Objects.requireNonNull(firstPage.getBody()).items()).containsExactly(mockStudent4, mockStudent1);
+        assertThat(nextLink).endsWith("; rel=\"next\"");
+
+        ResponseEntity<CursorPage<Student>> secondPage = this.restTemplate.exchange(
+                URI.create(nextLink.substring(1, nextLink.indexOf('>'))),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<CursorPage<Student>>() {}
+        );
+
+        assertThat(Objects.requireNonNull(secondPage.getBody()).items()).containsExactly(mockStudent2);
+        assertThat(secondPage.getBody().nextCursor()).isNull();
+        assertThat(secondPage.getHeaders().containsKey(HttpHeaders.LINK)).isFalse();
+    }
+
+    @Test
+    void shouldReturnStudentsPageById_WhenSortIsNotGiven() {
+        mockStudent1.setId(studentController.addStudent(mockStudent1));
+        mockStudent2.setId(studentController.addStudent(mockStudent2));
+
+        ResponseEntity<CursorPage<Student>> response = this.restTemplate.exchange(
+                "http://localhost:" + port + "/student/page",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<CursorPage<Student>>() {}
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(Objects.requireNonNull(response.getBody()).items()).containsExactly(mockStudent1, mockStudent2);
+    }
+
+    @Test
+    void shouldFindStudentsByNamePrefix_ThenFollowCursorToLastPage() {
+        long student4Id = studentController.addStudent(mockStudent4);
+        long student7Id = studentController.addStudent(mockStudent7);
+        studentController.addStudent(mockStudent1);
+
+        StudentNamePage firstPage = this.restTemplate.getForObject(
+                "http://localhost:" + port + "/student/by-name-prefix?prefix=a&limit=1", StudentNamePage.class);
+
+        assertThat(firstPage.students()).containsExactly(new StudentNameEntry(student4Id, mockStudent4.getName()));
+        assertThat(firstPage.nextCursor()).isNotNull();
+
+        StudentNamePage secondPage = this.restTemplate.getForObject(
+                "http://localhost:" + port + "/student/by-name-prefix?prefix=A&limit=1&cursor=" + firstPage.nextCursor(),
+                StudentNamePage.class);
+
+        assertThat(secondPage.students()).containsExactly(new StudentNameEntry(student7Id, mockStudent7.getName()));
+    }
+
+    @Test
+    void shouldExportAllStudents_ThenReturnStudentCollectionAsArray() {
+        long student1Id = studentController.addStudent(mockStudent1);
+        long student2Id = studentController.addStudent(mockStudent2);
+
+        mockStudent1.setId(student1Id);
+        mockStudent2.setId(student2Id);
+
+        ResponseEntity<List<Student>> response = this.restTemplate.exchange(
+                "http://localhost:" + port + "/student/export?format=json",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Student>>() {}
+        );
+
+        assertThat(response.getBody()).isEqualTo(List.of(mockStudent1, mockStudent2));
+    }
+
+    @Test
+    void shouldExportAllStudents_ThenReturnOneStudentPerLine() {
+        studentController.addStudent(mockStudent1);
+        studentController.addStudent(mockStudent2);
+
+        ResponseEntity<String> response = this.restTemplate.getForEntity("http://localhost:" + port + "/student/export", String.class);
+
+        assertThat(response.getHeaders().getContentType()).hasToString("application/x-ndjson");
+        assertThat(Objects.requireNonNull(response.getBody()).lines()).hasSize(2);
+    }
+
     @Test
     void shouldReturnCountOfAllStudents_ThenReturnStudentsCount() throws StudentNotFoundException {
         studentController.addStudent(mockStudent1);
@@ -405,4 +561,9 @@ public class StudentControllerRestTemplateTest {
 
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
     }
+
+    private long studentSequenceValue() {
+        return jdbcTemplate.queryForObject(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'STUDENT_SEQ'", Long.class);
+    }
 }
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
@@ -15,7 +16,10 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.model.StudentAgeStats;
+import ru.hogwarts.school.model.StudentNameEntry;
 import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.service.StudentAgeAggregate;
 import ru.hogwarts.school.service.StudentService;
 
 import java.util.List;
@@ -23,6 +27,7 @@ import java.util.Optional;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -66,6 +71,9 @@ public class StudentControllerWebMVCTest {
     @MockitoSpyBean
     private StudentService studentService;
 
+    @Autowired
+    private StudentAgeAggregate studentAgeAggregate;
+
     @InjectMocks
     private StudentController studentController;
 
@@ -282,7 +290,8 @@ public class StudentControllerWebMVCTest {
 
     @Test
     void shouldReturnAverageAgeOfAllStudents_ThenReturnAverageAgeOfAllStudents() throws Exception {
-        when(studentRepository.getAverageStudentsAge()).thenReturn(17);
+        when(studentRepository.getAgeStats()).thenReturn(new StudentAgeStats(2, 34, 16, 18));
+        studentAgeAggregate.reconcile();
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/student/average-age")
@@ -325,7 +334,8 @@ public class StudentControllerWebMVCTest {
         mockStudent4.setId(20L);
         mockStudent5.setId(21L);
 
-        when(studentRepository.findAll()).thenReturn(List.of(mockStudent5, mockStudent4, mockStudent3, mockStudent2, mockStudent1));
+        when(studentRepository.findByNamePrefix(eq("a%"), eq(""), eq(-1L), any(Pageable.class)))
+                .thenReturn(List.of(new StudentNameEntry(mockStudent4.getId(), mockStudent4.getName())));
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/student/starts-with-a")
@@ -338,12 +348,45 @@ public class StudentControllerWebMVCTest {
         verify(studentService, times(1)).getStudentsStartWithCharA();
     }
 
+    @Test
+    void shouldFindStudentsByNamePrefix_ThenReturnPageWithNextCursor() throws Exception {
+        when(studentRepository.findByNamePrefix(eq("an%"), eq(""), eq(-1L), any(Pageable.class)))
+                .thenReturn(List.of(new StudentNameEntry(20L, mockStudent4.getName())));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/student/by-name-prefix")
+                        .param("prefix", "An")
+                        .param("limit", "1")
+                        .accept(MediaType.APPLICATION_JSON)
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.students", hasSize(1)))
+                .andExpect(jsonPath("$.students[0].name").value(mockStudent4.getName()))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+
+        verify(studentService, times(1)).getStudentsByNamePrefix("An", 1, null);
+    }
+
+    @Test
+    void shouldFindStudentsByNamePrefix_WhenCursorIsInvalid_ThenReturnBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/student/by-name-prefix")
+                        .param("prefix", "An")
+                        .param("cursor", "not a cursor")
+                        .accept(MediaType.APPLICATION_JSON)
+                )
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void shouldFindStudentsAverageAgeUsingStreamAPI_ThenReturnThatStudentsAverageAge() throws Exception {
         mockStudent4.setId(20L);
         mockStudent5.setId(21L);
 
-        when(studentRepository.findAll()).thenReturn(List.of(mockStudent5, mockStudent4));
+        when(studentRepository.getAgeStats()).thenReturn(new StudentAgeStats(
+                2, mockStudent4.getAge() + mockStudent5.getAge(), mockStudent4.getAge(), mockStudent5.getAge()
+        ));
+        studentAgeAggregate.reconcile();
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/student/stream-average-age")
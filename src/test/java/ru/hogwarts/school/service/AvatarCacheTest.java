@@ -0,0 +1,68 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class AvatarCacheTest {
+    private final AvatarCache avatarCache = new AvatarCache(1024 * 1024, false, 100, 300);
+
+    @Test
+    void content_callerChangesReturnedArray_cachedContentUnchanged() throws IOException {
+        byte[] first = avatarCache.content("key", () -> new byte[]{1, 2, 3});
+        first[0] = 9;
+
+        assertThat(avatarCache.content("key", () -> new byte[]{4, 5, 6})).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void content_concurrentMisses_loadContentOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<byte[]> first = executor.submit(() -> avatarCache.content("key", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                while (release.getCount() > 0) {
+                    Thread.onSpinWait();
+                }
+                return new byte[]{1};
+            }));
+            loading.await();
+            Future<byte[]> second = executor.submit(() -> avatarCache.content("key", () -> {
+                loads.incrementAndGet();
+                return new byte[]{2};
+            }));
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).containsExactly(1);
+            assertThat(second.get(5, TimeUnit.SECONDS)).containsExactly(1);
+            assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void content_loaderFails_rethrowsIOExceptionAndCachesNothing() throws IOException {
+        assertThatExceptionOfType(NoSuchFileException.class)
+                .isThrownBy(() -> avatarCache.content("key", () -> {
+                    throw new NoSuchFileException("key");
+                }));
+
+        assertThat(avatarCache.content("key", () -> new byte[]{1})).containsExactly(1);
+    }
+}
@@ -0,0 +1,91 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
+import ru.hogwarts.school.storage.AvatarStore;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvatarImageProcessorTest {
+    @Mock
+    private AvatarStore avatarStore;
+
+    @Mock
+    private AvatarBlobRepository avatarBlobRepository;
+
+    private AvatarImageProcessor avatarImageProcessor;
+
+    @AfterEach
+    void tearDown() {
+        avatarImageProcessor.shutdown();
+    }
+
+    @Test
+    void scheduleThumbnails_readableImage_writesScaledThumbnails() throws IOException {
+        avatarImageProcessor = new AvatarImageProcessor(avatarStore, avatarBlobRepository, List.of(128, 64), 1, 10, false, "jpeg", 0.8f, 512);
+
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB), "png", original);
+
+        avatarImageProcessor.scheduleThumbnails("abc123", "image/png", original.toByteArray());
+
+        ArgumentCaptor<byte[]> thumbnail = ArgumentCaptor.forClass(byte[].class);
+        verify(avatarStore, timeout(5000)).write(eq("abc123-64"), thumbnail.capture());
+        verify(avatarStore, timeout(5000)).write(eq("abc123-128"), any(byte[].class));
+
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(thumbnail.getValue()));
+        assertThat(result.getWidth()).isEqualTo(64);
+        assertThat(result.getHeight()).isEqualTo(32);
+    }
+
+    @Test
+    void scheduleThumbnails_optimizationEnabled_writesSmallerCappedRendition() throws IOException {
+        avatarImageProcessor = new AvatarImageProcessor(avatarStore, avatarBlobRepository, List.of(64), 1, 10, true, "jpeg", 0.7f, 256);
+
+        BufferedImage image = new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB);
+
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, (x * 31 + y * 17) & 0xFFFFFF);
+            }
+        }
+
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", original);
+
+        avatarImageProcessor.scheduleThumbnails("abc123", "image/png", original.toByteArray());
+
+        ArgumentCaptor<byte[]> optimized = ArgumentCaptor.forClass(byte[].class);
+        verify(avatarStore, timeout(5000)).write(eq("abc123-opt"), optimized.capture());
+        verify(avatarBlobRepository, timeout(5000)).markOptimized("abc123");
+
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(optimized.getValue()));
+        assertThat(optimized.getValue().length).isLessThan(original.size());
+        assertThat(result.getWidth()).isEqualTo(256);
+        assertThat(result.getHeight()).isEqualTo(128);
+        assertThat(avatarImageProcessor.optimizedMediaType()).isEqualTo("image/jpeg");
+    }
+
+    @Test
+    void fitThumbnailSize_requestedSize_returnsSmallestFittingSize() {
+        avatarImageProcessor = new AvatarImageProcessor(avatarStore, avatarBlobRepository, List.of(128, 64), 1, 10, false, "jpeg", 0.8f, 512);
+
+        assertThat(avatarImageProcessor.fitThumbnailSize(50)).contains(64);
+        assertThat(avatarImageProcessor.fitThumbnailSize(100)).contains(128);
+        assertThat(avatarImageProcessor.fitThumbnailSize(500)).isEmpty();
+    }
+}
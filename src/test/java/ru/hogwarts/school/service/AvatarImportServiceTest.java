@@ -0,0 +1,102 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.hogwarts.school.model.AvatarImportEntry;
+import ru.hogwarts.school.model.AvatarImportResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvatarImportServiceTest {
+    @Mock
+    private AvatarService avatarService;
+
+    private AvatarImportService avatarImportService;
+
+    @BeforeEach
+    void setUp() {
+        avatarImportService = new AvatarImportService(avatarService, new AvatarUploadLimits(1024 * 300, List.of()), 2, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        avatarImportService.shutdown();
+    }
+
+    @Test
+    void importArchive_mixedEntries_reportsEveryEntry() throws IOException {
+        when(avatarService.importAvatars(anyList())).thenAnswer(invocation -> {
+            List<AvatarImportEntry> entries = invocation.getArgument(0);
+
+            return entries.stream().map(entry -> AvatarImportResult.imported(entry.name(), entry.studentId())).toList();
+        });
+
+        byte[] archive = zip(
+                "1.png", new byte[100],
+                "intake/2.jpg", new byte[100],
+                "3.jpeg", new byte[100],
+                "harry.png", new byte[100],
+                "4.txt", new byte[100],
+                "5.png", new byte[1024 * 300 + 1]
+        );
+
+        List<AvatarImportResult> results = avatarImportService.importArchive(new ByteArrayInputStream(archive));
+
+        assertThat(results).filteredOn(result -> result.status() == AvatarImportResult.Status.IMPORTED)
+                .extracting(AvatarImportResult::studentId)
+                .containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(results).filteredOn(result -> result.status() == AvatarImportResult.Status.REJECTED)
+                .extracting(AvatarImportResult::entry)
+                .containsExactlyInAnyOrder("harry.png", "4.txt", "5.png");
+        verify(avatarService, times(2)).importAvatars(anyList());
+    }
+
+    @Test
+    void importArchive_batchFails_retriesEntriesOneByOne() throws IOException {
+        when(avatarService.importAvatars(anyList())).thenAnswer(invocation -> {
+            List<AvatarImportEntry> entries = invocation.getArgument(0);
+
+            if (entries.size() > 1 || entries.get(0).studentId() == 2L) {
+                throw new IllegalStateException("Constraint violation");
+            }
+
+            return List.of(AvatarImportResult.imported(entries.get(0).name(), entries.get(0).studentId()));
+        });
+
+        List<AvatarImportResult> results = avatarImportService.importArchive(new ByteArrayInputStream(zip(
+                "1.png", new byte[100],
+                "2.png", new byte[100]
+        )));
+
+        assertThat(results).extracting(AvatarImportResult::status)
+                .containsExactly(AvatarImportResult.Status.IMPORTED, AvatarImportResult.Status.FAILED);
+    }
+
+    private static byte[] zip(Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+                zip.write((byte[]) namesAndContents[i + 1]);
+                zip.closeEntry();
+            }
+        }
+
+        return archive.toByteArray();
+    }
+}
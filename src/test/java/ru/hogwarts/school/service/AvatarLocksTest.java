@@ -0,0 +1,45 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class AvatarLocksTest {
+    private final AvatarLocks avatarLocks = new AvatarLocks(64);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void lockUntilCompletion_insideTransaction_holdsLockUntilCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        avatarLocks.lockUntilCompletion(List.of(1L, 2L));
+
+        assertThat(avatarLocks.isLocked(1L)).isTrue();
+        assertThat(avatarLocks.isLocked(2L)).isTrue();
+        assertThat(avatarLocks.stripeIndex(1L)).isNotEqualTo(avatarLocks.stripeIndex(2L));
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        assertThat(avatarLocks.isLocked(1L)).isFalse();
+        assertThat(avatarLocks.isLocked(2L)).isFalse();
+    }
+
+    @Test
+    void lockUntilCompletion_outsideTransaction_throwsException() {
+        assertThatIllegalStateException().isThrownBy(() -> avatarLocks.lockUntilCompletion(List.of(1L)));
+        assertThat(avatarLocks.isLocked(1L)).isFalse();
+    }
+}
@@ -0,0 +1,86 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hogwarts.school.model.AvatarPopularityEntry;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvatarPopularityTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void top_skewedDownloads_returnsHottestStudentsFirst() {
+        AvatarPopularity popularity = new AvatarPopularity(1024, 3, tempDir.resolve("popular.txt").toString());
+
+        for (long studentId = 1; studentId <= 50; studentId++) {
+            for (int i = 0; i < studentId % 10; i++) {
+                popularity.record(studentId);
+            }
+        }
+
+        for (int i = 0; i < 100; i++) {
+            popularity.record(7L);
+            popularity.record(8L);
+            popularity.record(8L);
+        }
+
+        popularity.record(9L);
+
+        assertThat(popularity.top(2)).extracting(AvatarPopularityEntry::studentId).containsExactly(8L, 7L);
+        assertThat(popularity.estimate(7L)).isGreaterThanOrEqualTo(107L);
+        assertThat(popularity.top(10)).hasSize(3);
+    }
+
+    @Test
+    void saveSnapshot_thenRestart_restoresTopStudents() {
+        String snapshot = tempDir.resolve("popular.txt").toString();
+        AvatarPopularity popularity = new AvatarPopularity(1024, 10, snapshot);
+
+        for (int i = 0; i < 5; i++) {
+            popularity.record(42L);
+        }
+
+        popularity.record(43L);
+        popularity.saveSnapshot();
+
+        AvatarPopularity restarted = new AvatarPopularity(1024, 10, snapshot);
+
+        assertThat(restarted.top(1)).containsExactly(new AvatarPopularityEntry(42L, 5L));
+        assertThat(restarted.estimate(43L)).isEqualTo(1L);
+    }
+
+    @Test
+    void record_concurrentNewStudents_neverOverfillsTop() throws InterruptedException {
+        AvatarPopularity popularity = new AvatarPopularity(1024, 5, tempDir.resolve("popular.txt").toString());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int thread = 0; thread < 8; thread++) {
+            long firstStudentId = thread * 1000L;
+
+            executor.submit(() -> {
+                start.await();
+
+                for (long studentId = firstStudentId; studentId < firstStudentId + 1000; studentId++) {
+                    popularity.record(studentId);
+                }
+
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(popularity.top(100)).hasSize(5);
+    }
+}
@@ -0,0 +1,66 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class AvatarPresenceFilterTest {
+    @Test
+    void mightContain_beforeRebuild_answersMaybe() {
+        AvatarPresenceFilter filter = new AvatarPresenceFilter(1000, 0.01);
+
+        assertThat(filter.mightContain(1L)).isTrue();
+    }
+
+    @Test
+    void mightContain_afterRebuild_hasNoFalseNegativesAndFewFalsePositives() {
+        AvatarPresenceFilter filter = new AvatarPresenceFilter(1000, 0.01);
+        filter.put(5000L);
+        filter.rebuild(() -> LongStream.range(0, 1000).boxed().toList());
+        filter.put(6000L);
+
+        assertThat(LongStream.range(0, 1000).allMatch(filter::mightContain)).isTrue();
+        assertThat(filter.mightContain(5000L)).isTrue();
+        assertThat(filter.mightContain(6000L)).isTrue();
+        assertThat(LongStream.range(10_000, 20_000).filter(filter::mightContain).count()).isLessThan(300);
+    }
+
+    @Test
+    void mightContain_emptyRebuild_rejectsEveryStudent() {
+        AvatarPresenceFilter filter = new AvatarPresenceFilter(1000, 0.01);
+        filter.rebuild(List::of);
+
+        assertThat(filter.mightContain(1L)).isFalse();
+    }
+
+    @Test
+    void rebuild_studentAddedDuringScan_isKept() {
+        AvatarPresenceFilter filter = new AvatarPresenceFilter(1000, 0.01);
+        filter.rebuild(List::of);
+
+        filter.rebuild(() -> {
+            filter.put(7L);
+
+            return List.of(1L);
+        });
+
+        assertThat(filter.mightContain(1L)).isTrue();
+        assertThat(filter.mightContain(7L)).isTrue();
+    }
+
+    @Test
+    void rebuild_scanFails_answersMaybeUntilNextRebuild() {
+        AvatarPresenceFilter filter = new AvatarPresenceFilter(1000, 0.01);
+        filter.rebuild(List::of);
+
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() -> filter.rebuild(() -> {
+            throw new IllegalStateException("database unavailable");
+        }));
+
+        assertThat(filter.mightContain(1L)).isTrue();
+    }
+}
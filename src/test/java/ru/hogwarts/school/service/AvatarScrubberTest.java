@@ -0,0 +1,124 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.AvatarStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvatarScrubberTest {
+    private static final String ORPHAN_KEY = "f".repeat(64) + "-100";
+
+    @Mock
+    private AvatarService avatarService;
+
+    @Mock
+    private AvatarStore avatarStore;
+
+    @Mock
+    private AvatarRepository avatarRepository;
+
+    @Mock
+    private AvatarBlobRepository avatarBlobRepository;
+
+    private AvatarScrubber avatarScrubber;
+
+    @AfterEach
+    void tearDown() {
+        avatarScrubber.shutdown();
+    }
+
+    @Test
+    void scrubChunk_corruptedContent_countsChecksumMismatch() throws IOException, NoSuchAlgorithmException {
+        avatarScrubber = createScrubber(0);
+        String digest = sha256("avatar");
+        when(avatarBlobRepository.findDigestsAfter(eq(""), any(Pageable.class))).thenReturn(List.of(digest));
+        when(avatarService.reconcileBlob(digest)).thenReturn(AvatarService.BlobReconciliation.CONSISTENT);
+        when(avatarStore.read(digest)).thenReturn(Optional.of("tampered".getBytes(StandardCharsets.UTF_8)));
+        when(avatarStore.keys("", 10)).thenReturn(List.of());
+        when(avatarRepository.findMetadataAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+
+        avatarScrubber.scrubChunk();
+
+        assertThat(avatarScrubber.getStats().blobsChecked()).isEqualTo(1);
+        assertThat(avatarScrubber.getStats().checksumMismatches()).isEqualTo(1);
+        assertThat(avatarScrubber.getStats().completedPasses()).isEqualTo(1);
+    }
+
+    @Test
+    void scrubChunk_orphanedContent_removedOnlyAfterGracePeriod() throws IOException {
+        avatarScrubber = createScrubber(3600);
+        when(avatarBlobRepository.findDigestsAfter(eq(""), any(Pageable.class))).thenReturn(List.of());
+        when(avatarStore.keys("", 10)).thenReturn(List.of(ORPHAN_KEY, "12.png"));
+        when(avatarBlobRepository.existsById("f".repeat(64))).thenReturn(false);
+        when(avatarRepository.findMetadataAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+
+        avatarScrubber.scrubChunk();
+        avatarScrubber.scrubChunk();
+
+        verify(avatarStore, never()).delete(anyString());
+        assertThat(avatarScrubber.getStats().orphanCandidates()).isEqualTo(1);
+    }
+
+    @Test
+    void scrubChunk_orphanedContentPastGracePeriod_removesIt() throws IOException {
+        avatarScrubber = createScrubber(0);
+        when(avatarBlobRepository.findDigestsAfter(eq(""), any(Pageable.class))).thenReturn(List.of());
+        when(avatarStore.keys("", 10)).thenReturn(List.of(ORPHAN_KEY));
+        when(avatarBlobRepository.existsById("f".repeat(64))).thenReturn(false);
+        when(avatarRepository.findMetadataAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+
+        avatarScrubber.scrubChunk();
+        avatarScrubber.scrubChunk();
+
+        verify(avatarStore, times(1)).delete(ORPHAN_KEY);
+        assertThat(avatarScrubber.getStats().orphanContentRemoved()).isEqualTo(1);
+        assertThat(avatarScrubber.getStats().orphanCandidates()).isZero();
+    }
+
+    @Test
+    void scrubChunk_avatarWithoutBlob_reportedAsDangling() throws IOException {
+        avatarScrubber = createScrubber(0);
+        when(avatarBlobRepository.findDigestsAfter(eq(""), any(Pageable.class))).thenReturn(List.of());
+        when(avatarStore.keys("", 10)).thenReturn(List.of());
+        when(avatarRepository.findMetadataAfter(anyLong(), any(Pageable.class))).thenReturn(List.of(
+                new AvatarMetadata(1L, 5L, null, 10, "image/png", "abc123", null)
+        ));
+        when(avatarBlobRepository.existsById("abc123")).thenReturn(false);
+
+        avatarScrubber.scrubChunk();
+
+        assertThat(avatarScrubber.getStats().danglingAvatars()).isEqualTo(1);
+        verify(avatarRepository, never()).deleteById(anyLong());
+    }
+
+    private AvatarScrubber createScrubber(long orphanGraceSeconds) {
+        return new AvatarScrubber(
+                avatarService, avatarStore, avatarRepository, avatarBlobRepository,
+                10, 60, Long.MAX_VALUE, orphanGraceSeconds
+        );
+    }
+
+    private static String sha256(String value) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8))
+        );
+    }
+}
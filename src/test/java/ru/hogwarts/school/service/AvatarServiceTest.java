@@ -5,29 +5,47 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
+import ru.hogwarts.school.exception.AvatarMediaTypeNotSupportedException;
 import ru.hogwarts.school.exception.AvatarNotAllowedBigFileSizeException;
 import ru.hogwarts.school.exception.StudentNotFoundException;
 import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarBlob;
+import ru.hogwarts.school.model.AvatarImportEntry;
+import ru.hogwarts.school.model.AvatarImportResult;
+import ru.hogwarts.school.model.AvatarMetadata;
+import ru.hogwarts.school.model.AvatarVariant;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
 import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.AvatarRegion;
+import ru.hogwarts.school.storage.AvatarStore;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -38,6 +56,30 @@ class AvatarServiceTest {
     @Mock
     private AvatarRepository avatarRepository;
 
+    @Mock
+    private AvatarBlobRepository avatarBlobRepository;
+
+    @Mock
+    private AvatarStore avatarStore;
+
+    @Mock
+    private AvatarImageProcessor avatarImageProcessor;
+
+    @Spy
+    private AvatarCache avatarCache = new AvatarCache(1024 * 1024, false, 100, 300);
+
+    @Mock
+    private AvatarLocks avatarLocks;
+
+    @Spy
+    private AvatarUploadLimits avatarUploadLimits = new AvatarUploadLimits(1024 * 300, List.of("image/gif=1024"));
+
+    @Mock
+    private AvatarPopularity avatarPopularity;
+
+    @Spy
+    private AvatarPresenceFilter avatarPresenceFilter = new AvatarPresenceFilter(1000, 0.01);
+
     @Mock
     private StudentService studentService;
 
@@ -48,11 +90,12 @@ class AvatarServiceTest {
     private Student testStudent2;
     private final Avatar testAvatar1 = new Avatar();
     private final Avatar testAvatar2 = new Avatar();
+    private final byte[] testAvatarData = new byte[1024];
 
     private final String avatarsDir = "./src/main/resources/images/avatars";
 
     @BeforeEach
-    void setUp() throws IOException, NoSuchFieldException, IllegalAccessException {
+    void setUp() throws IOException {
         testStudent1 = new Student();
         testStudent1.setId(1L);
         testStudent1.setName("Harry Potter");
@@ -67,17 +110,11 @@ class AvatarServiceTest {
         testAvatar1.setFilePath(avatarsDir + "/1.jpg");
         testAvatar1.setFileSize(1024L);
         testAvatar1.setMediaType("image/jpeg");
-        testAvatar1.setData(new byte[1024]);
 
         testAvatar2.setStudent(testStudent2);
         testAvatar2.setFilePath(avatarsDir + "/2.jpg");
         testAvatar2.setFileSize(1024L);
         testAvatar2.setMediaType("image/jpeg");
-        testAvatar2.setData(new byte[1024]);
-
-        Field avatarsDirField = AvatarService.class.getDeclaredField("avatarsDir");
-        avatarsDirField.setAccessible(true);
-        avatarsDirField.set(avatarService, avatarsDir);
 
         Path avatarsPath = Path.of(avatarsDir);
 
@@ -91,13 +128,14 @@ class AvatarServiceTest {
         testAvatar1.setId(1L);
         testAvatar2.setId(2L);
         PageRequest pageRequestMock = PageRequest.of(1, 1);
-        Page<Avatar> page = new PageImpl<>(List.of(testAvatar2), pageRequestMock, 2);
-        when(avatarRepository.findAll(pageRequestMock)).thenReturn(page);
+        Page<AvatarMetadata> page = new PageImpl<>(List.of(toMetadata(testAvatar2)), pageRequestMock, 2);
+        when(avatarRepository.findAllMetadata(pageRequestMock)).thenReturn(page);
 
-        List<Avatar> result = avatarService.getAllAvatars(2, 1);
+        List<AvatarMetadata> result = avatarService.getAllAvatars(2, 1);
 
         assertThat(result).isEqualTo(page.getContent());
-        verify(avatarRepository, times(1)).findAll(pageRequestMock);
+        verify(avatarRepository, times(1)).findAllMetadata(pageRequestMock);
+        verify(avatarRepository, never()).findAll(any(PageRequest.class));
     }
 
     @Test
@@ -121,55 +159,308 @@ class AvatarServiceTest {
     }
 
     @Test
-    void downloadAvatar_existingAvatar_returnsResponseEntity() throws IOException {
+    void downloadAvatar_existingAvatar_writesWholeFile() throws IOException {
         testAvatar1.setId(3L);
         testStudent1.setId(3L);
-        when(avatarRepository.findByStudentId(3L)).thenReturn(Optional.of(testAvatar1));
+        testAvatar1.setDigest("3");
+        when(avatarRepository.findMetadataByStudentId(3L)).thenReturn(Optional.of(toMetadata(testAvatar1)));
 
         Path testFilePath = Path.of(avatarsDir, "3.jpg");
-        Files.createFile(testFilePath);
+        Files.write(testFilePath, testAvatarData);
+        when(avatarStore.locate("3")).thenReturn(Optional.of(new AvatarRegion(testFilePath, 0, testAvatarData.length)));
 
-        ResponseEntity<Resource> responseEntity = avatarService.downloadAvatar(3L);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/avatar/3/avatar");
+        MockHttpServletResponse response = new MockHttpServletResponse();
 
-        assertThat(HttpStatus.OK).isEqualTo(responseEntity.getStatusCode());
-        assertThat(testAvatar1.getFileSize()).isEqualTo(responseEntity.getHeaders().getContentLength());
-        assertThat(testAvatar1.getMediaType()).isEqualTo(Objects.requireNonNull(responseEntity.getHeaders().getContentType()).toString());
+        avatarService.downloadAvatar(avatarService.findAvatarMetadata(3L), request, response);
 
         Files.deleteIfExists(testFilePath);
 
-        verify(avatarRepository, times(1)).findByStudentId(3L);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentLengthLong()).isEqualTo(testAvatar1.getFileSize());
+        assertThat(response.getContentType()).isEqualTo(testAvatar1.getMediaType());
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getContentAsByteArray()).isEqualTo(testAvatarData);
+
+        verify(avatarRepository, times(1)).findMetadataByStudentId(3L);
+        verify(avatarPopularity, times(1)).record(3L);
+    }
+
+    @Test
+    void downloadAvatar_rangeRequested_writesPartialContent() throws IOException {
+        testAvatar1.setId(9L);
+        testStudent1.setId(9L);
+        testAvatar1.setDigest("9");
+        when(avatarRepository.findMetadataByStudentId(9L)).thenReturn(Optional.of(toMetadata(testAvatar1)));
+
+        Path testFilePath = Path.of(avatarsDir, "9.jpg");
+        Files.write(testFilePath, testAvatarData);
+        when(avatarStore.locate("9")).thenReturn(Optional.of(new AvatarRegion(testFilePath, 0, testAvatarData.length)));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/avatar/9/avatar");
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-199");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        avatarService.downloadAvatar(avatarService.findAvatarMetadata(9L), request, response);
+
+        Files.deleteIfExists(testFilePath);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 100-199/1024");
+        assertThat(response.getContentLengthLong()).isEqualTo(100L);
+        assertThat(response.getContentAsByteArray()).hasSize(100);
     }
 
     @Test
-    void downloadAvatar_avatarNotFound_throwsException() {
+    void downloadAvatar_contentOnlyReadable_writesRangeFromCachedBuffer() throws IOException {
+        new Random(10).nextBytes(testAvatarData);
+        testAvatar1.setId(10L);
+        testStudent1.setId(10L);
+        testAvatar1.setDigest("10");
+        when(avatarRepository.findMetadataByStudentId(10L)).thenReturn(Optional.of(toMetadata(testAvatar1)));
+        when(avatarStore.locate("10")).thenReturn(Optional.empty());
+        when(avatarStore.read("10")).thenReturn(Optional.of(testAvatarData));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/avatar/10/avatar");
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-199");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        avatarService.downloadAvatar(avatarService.findAvatarMetadata(10L), request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(testAvatarData, 100, 200));
+    }
+
+    @Test
+    void findAvatarMetadata_avatarNotFound_throwsException() {
         testAvatar1.setId(4L);
         testStudent1.setId(4L);
-        when(avatarRepository.findByStudentId(4L)).thenReturn(Optional.empty());
+        when(avatarRepository.findMetadataByStudentId(4L)).thenReturn(Optional.empty());
+
+        assertThatExceptionOfType(StudentNotFoundException.class).isThrownBy(() -> avatarService.findAvatarMetadata(4L));
+        verify(avatarRepository, times(1)).findMetadataByStudentId(4L);
+    }
+
+    @Test
+    void downloadAvatar_matchingETag_returnsNotModified() throws IOException {
+        testAvatar1.setId(10L);
+        testStudent1.setId(10L);
+        testAvatar1.setDigest("abc123");
+        testAvatar1.setUpdatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        when(avatarRepository.findMetadataByStudentId(10L)).thenReturn(Optional.of(toMetadata(testAvatar1)));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/avatar/10/avatar");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"abc123\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        avatarService.downloadAvatar(avatarService.findAvatarMetadata(10L), request, response);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"abc123\"");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verifyNoInteractions(avatarStore);
+    }
+
+    @Test
+    void downloadAvatar_legacyAvatarWithoutDigest_sendsFileWithoutETag() throws IOException {
+        Path legacyFile = Files.write(Path.of(avatarsDir, "10.jpg"), testAvatarData);
+        testAvatar1.setId(10L);
+        testStudent1.setId(10L);
+        testAvatar1.setFilePath(legacyFile.toString());
+        testAvatar1.setUpdatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        when(avatarRepository.findMetadataByStudentId(10L)).thenReturn(Optional.of(toMetadata(testAvatar1)));
+
+        // Another legacy avatar used to be sent as "null" too; it must not validate this one.
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/avatar/10/avatar");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"null\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        avatarService.downloadAvatar(avatarService.findAvatarMetadata(10L), request, response);
+
+        Files.deleteIfExists(legacyFile);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isNull();
+        assertThat(response.getDateHeader(HttpHeaders.LAST_MODIFIED)).isEqualTo(Instant.parse("2024-01-01T00:00:00Z").toEpochMilli());
+        assertThat(response.getContentAsByteArray()).isEqualTo(testAvatarData);
+        verifyNoInteractions(avatarStore);
+    }
+
+    @Test
+    void findPreviewVariant_thumbnailGenerated_returnsThumbnail() throws IOException {
+        testAvatar1.setId(13L);
+        testAvatar1.setDigest("abc123");
+        when(avatarImageProcessor.fitThumbnailSize(100)).thenReturn(Optional.of(128));
+        when(avatarImageProcessor.thumbnailKey("abc123", 128)).thenReturn("abc123-128");
+        when(avatarImageProcessor.thumbnailMediaType("image/jpeg")).thenReturn("image/jpeg");
+        when(avatarStore.contains("abc123-128")).thenReturn(true);
+
+        AvatarVariant result = avatarService.findPreviewVariant(toMetadata(testAvatar1), 100, null);
+
+        assertThat(result).isEqualTo(new AvatarVariant("abc123-128", "image/jpeg"));
+        verify(avatarImageProcessor, never()).scheduleThumbnails(anyString(), anyString(), any(byte[].class));
+    }
+
+    @Test
+    void findPreviewVariant_thumbnailMissing_returnsOriginalAndSchedulesThumbnails() throws IOException {
+        testAvatar1.setId(14L);
+        testAvatar1.setDigest("abc123");
+        when(avatarImageProcessor.fitThumbnailSize(64)).thenReturn(Optional.of(64));
+        when(avatarImageProcessor.thumbnailKey("abc123", 64)).thenReturn("abc123-64");
+        when(avatarStore.contains("abc123-64")).thenReturn(false);
+        when(avatarStore.read("abc123")).thenReturn(Optional.of(testAvatarData));
+
+        AvatarVariant result = avatarService.findPreviewVariant(toMetadata(testAvatar1), 64, null);
+
+        assertThat(result).isEqualTo(new AvatarVariant("abc123", "image/jpeg"));
+        verify(avatarImageProcessor, times(1)).scheduleThumbnails("abc123", "image/jpeg", testAvatarData);
+    }
+
+    @Test
+    void negotiateVariant_optimizedRenditionStored_followsAcceptHeader() throws IOException {
+        testAvatar1.setDigest("abc123");
+        testAvatar1.setMediaType("image/png");
+        AvatarMetadata metadata = toMetadata(testAvatar1, true);
+        when(avatarImageProcessor.isOptimizing()).thenReturn(true);
+        when(avatarImageProcessor.optimizedKey("abc123")).thenReturn("abc123-opt");
+        when(avatarImageProcessor.optimizedMediaType()).thenReturn("image/jpeg");
+
+        assertThat(avatarService.negotiateVariant(metadata, null).key()).isEqualTo("abc123-opt");
+        assertThat(avatarService.negotiateVariant(metadata, "image/*").key()).isEqualTo("abc123-opt");
+        assertThat(avatarService.negotiateVariant(metadata, "image/png, image/jpeg;q=0.5").key()).isEqualTo("abc123");
+        assertThat(avatarService.negotiateVariant(metadata, "image/png").key()).isEqualTo("abc123");
+        verifyNoInteractions(avatarStore);
+    }
+
+    @Test
+    void negotiateVariant_noOptimizedRenditionRecorded_servesOriginalWithoutAskingStore() {
+        testAvatar1.setDigest("abc123");
+        when(avatarImageProcessor.isOptimizing()).thenReturn(true);
+
+        assertThat(avatarService.negotiateVariant(toMetadata(testAvatar1), null).key()).isEqualTo("abc123");
+        verifyNoInteractions(avatarStore);
+    }
+
+    @Test
+    void findAvatarData_repeatedLookup_servesContentFromCache() throws IOException {
+        testAvatar1.setId(15L);
+        testAvatar1.setDigest("abc123");
+        AvatarMetadata metadata = toMetadata(testAvatar1);
+        when(avatarStore.read("abc123")).thenReturn(Optional.of(testAvatarData));
+
+        avatarService.findAvatarData(metadata, metadata.original());
+        byte[] result = avatarService.findAvatarData(metadata, metadata.original());
+
+        assertThat(result).isEqualTo(testAvatarData);
+        assertThat(avatarService.getCacheStats().hitCount()).isEqualTo(1);
+        verify(avatarStore, times(1)).read("abc123");
+    }
+
+    @Test
+    void writeAvatarArchive_studentWithoutAvatar_listsItAsMissing() throws IOException {
+        testAvatar1.setId(16L);
+        testAvatar1.setDigest("digest1");
+        when(avatarRepository.findMetadataByStudentIdIn(anyCollection())).thenReturn(List.of(toMetadata(testAvatar1)));
+        when(avatarStore.read("digest1")).thenReturn(Optional.of(testAvatarData));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        avatarService.writeAvatarArchive(List.of(1L, 2L), avatarService.findAvatarMetadata(List.of(1L, 2L)), out);
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry avatarEntry = zip.getNextEntry();
+            assertThat(avatarEntry.getName()).isEqualTo("1.jpeg");
+            assertThat(zip.readAllBytes()).isEqualTo(testAvatarData);
+
+            ZipEntry missingEntry = zip.getNextEntry();
+            assertThat(missingEntry.getName()).isEqualTo("missing.txt");
+            assertThat(new String(zip.readAllBytes())).isEqualTo("2\n");
+        }
+
+        assertThat(avatarService.findAvatarMetadata(List.of(1L))).containsKey(1L);
+        verify(avatarRepository, times(1)).findMetadataByStudentIdIn(anyCollection());
+    }
 
-        assertThatExceptionOfType(StudentNotFoundException.class).isThrownBy(() -> avatarService.downloadAvatar(4L));
-        verify(avatarRepository, times(1)).findByStudentId(4L);
+    @Test
+    void findAvatarMetadata_studentWithoutAvatar_skipsQuery() {
+        when(avatarRepository.findAllStudentIds()).thenReturn(List.of(1L));
+        avatarService.rebuildPresenceFilter();
+
+        assertThatExceptionOfType(StudentNotFoundException.class).isThrownBy(() -> avatarService.findAvatarMetadata(2L));
+        verify(avatarRepository, never()).findMetadataByStudentId(anyLong());
     }
 
     @Test
-    void uploadAvatar_validInput_createsAvatar() throws IOException {
+    void uploadAvatar_validInput_createsAvatar() throws IOException, NoSuchAlgorithmException {
         testAvatar1.setId(5L);
         testStudent1.setId(5L);
         testAvatar1.setStudent(testStudent1);
         when(studentService.findStudent(5L)).thenReturn(testStudent1);
-        when(avatarRepository.findById(5L)).thenReturn(Optional.empty());
+        when(avatarRepository.findByStudentId(5L)).thenReturn(Optional.empty());
         when(avatarRepository.save(any(Avatar.class))).thenReturn(testAvatar1);
 
         MultipartFile avatarFile = new MockMultipartFile("avatar", "avatar.jpg", "image/jpeg", "test data".getBytes());
+        String digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest("test data".getBytes()));
+        when(avatarBlobRepository.insertIfAbsent(digest, 9L, "image/jpeg")).thenReturn(1);
+        List<byte[]> written = new ArrayList<>();
+        when(avatarStore.write(eq(digest), any(Path.class))).thenAnswer(invocation -> {
+            written.add(Files.readAllBytes(invocation.getArgument(1, Path.class)));
+
+            return avatarsDir + "/" + digest;
+        });
+
+        String url = avatarService.uploadAvatar(5L, avatarFile);
+
+        assertThat(url).isEqualTo("/static/avatars/" + digest + ".jpeg");
+        assertThat(written).containsExactly("test data".getBytes());
+        verify(avatarStore, never()).write(anyString(), any(byte[].class));
+        verify(avatarImageProcessor, times(1)).scheduleThumbnails(digest, "image/jpeg");
+        verify(avatarBlobRepository, times(1)).updateFilePath(digest, avatarsDir + "/" + digest);
+        verify(avatarRepository, times(1)).save(argThat(avatar -> digest.equals(avatar.getDigest())));
+        verify(avatarCache, times(1)).invalidate(5L);
+        verify(avatarLocks, times(1)).lockUntilCompletion(List.of(5L));
+        verify(avatarPresenceFilter, times(1)).put(5L);
+    }
 
-        avatarService.uploadAvatar(5L, avatarFile);
+    @Test
+    void uploadAvatar_blobAlreadyStored_reusesBlob() throws IOException {
+        testAvatar1.setId(11L);
+        testStudent1.setId(11L);
+        AvatarBlob storedBlob = new AvatarBlob();
+        storedBlob.setFilePath(avatarsDir + "/stored.jpg");
+        when(studentService.findStudent(11L)).thenReturn(testStudent1);
+        when(avatarRepository.findByStudentId(11L)).thenReturn(Optional.empty());
+        when(avatarBlobRepository.incrementReferenceCount(anyString())).thenReturn(1);
+        when(avatarBlobRepository.getReferenceById(anyString())).thenReturn(storedBlob);
 
-        Path expectedFilePath = Path.of(avatarsDir, "5.jpg");
-        assertThat(Files.exists(expectedFilePath)).isTrue();
-        assertThat(avatarFile.getSize()).isEqualTo(Files.size(expectedFilePath));
+        MultipartFile avatarFile = new MockMultipartFile("avatar", "avatar.jpg", "image/jpeg", "test data".getBytes());
 
-        Files.deleteIfExists(expectedFilePath);
+        avatarService.uploadAvatar(11L, avatarFile);
 
-        verify(avatarRepository, times(1)).save(any(Avatar.class));
+        verify(avatarStore, never()).write(anyString(), any(Path.class));
+        verify(avatarBlobRepository, never()).insertIfAbsent(anyString(), anyLong(), anyString());
+        verify(avatarRepository, times(1)).save(argThat(avatar -> storedBlob.getFilePath().equals(avatar.getFilePath())));
+    }
+
+    @Test
+    void uploadAvatar_sameContentInsertedConcurrently_reusesTheOtherBlob() throws IOException {
+        testAvatar1.setId(17L);
+        testStudent1.setId(17L);
+        AvatarBlob storedBlob = new AvatarBlob();
+        storedBlob.setFilePath(avatarsDir + "/stored.jpg");
+        when(studentService.findStudent(17L)).thenReturn(testStudent1);
+        when(avatarRepository.findByStudentId(17L)).thenReturn(Optional.empty());
+        // The row is not visible yet on the first try; the insert then waits for the other upload and conflicts.
+        when(avatarBlobRepository.incrementReferenceCount(anyString())).thenReturn(0, 1);
+        when(avatarBlobRepository.insertIfAbsent(anyString(), anyLong(), anyString())).thenReturn(0);
+        when(avatarBlobRepository.getReferenceById(anyString())).thenReturn(storedBlob);
+
+        MultipartFile avatarFile = new MockMultipartFile("avatar", "avatar.jpg", "image/jpeg", "test data".getBytes());
+
+        avatarService.uploadAvatar(17L, avatarFile);
+
+        verify(avatarStore, never()).write(anyString(), any(Path.class));
+        verify(avatarBlobRepository, times(2)).incrementReferenceCount(anyString());
+        verify(avatarRepository, times(1)).save(argThat(avatar -> storedBlob.getFilePath().equals(avatar.getFilePath())));
     }
 
     @Test
@@ -188,6 +479,83 @@ class AvatarServiceTest {
         verify(avatarRepository, never()).save(any(Avatar.class));
     }
 
+    @Test
+    void uploadAvatar_fileOverMediaTypeLimit_throwsException() {
+        MultipartFile avatarFile = new MockMultipartFile("avatar", "avatar.gif", "image/gif", new byte[2048]);
+
+        assertThatExceptionOfType(AvatarNotAllowedBigFileSizeException.class)
+                .isThrownBy(() -> avatarService.uploadAvatar(6L, avatarFile))
+                .withMessageEndingWith("1024");
+        verifyNoInteractions(studentService);
+    }
+
+    @Test
+    void uploadAvatar_bodyLongerThanDeclaredSize_throwsException() {
+        when(studentService.findStudent(6L)).thenReturn(testStudent1);
+        MultipartFile avatarFile = new MockMultipartFile("avatar", "avatar.gif", "image/gif", new byte[2048]) {
+            @Override
+            public long getSize() {
+                return 512;
+            }
+        };
+
+        assertThatExceptionOfType(AvatarNotAllowedBigFileSizeException.class)
+                .isThrownBy(() -> avatarService.uploadAvatar(6L, avatarFile))
+                .withMessageEndingWith("1024");
+        verifyNoInteractions(avatarStore);
+        verify(avatarRepository, never()).save(any(Avatar.class));
+    }
+
+    @Test
+    void uploadAvatar_scriptableMediaType_isRejectedBeforeStoring() {
+        MultipartFile avatarFile = new MockMultipartFile("avatar", "avatar.svg", "image/svg+xml", "<svg/>".getBytes());
+
+        assertThatExceptionOfType(AvatarMediaTypeNotSupportedException.class)
+                .isThrownBy(() -> avatarService.uploadAvatar(6L, avatarFile));
+        verifyNoInteractions(studentService, avatarStore);
+    }
+
+    @Test
+    void uploadLimits_malformedMediaType_isUnsupported() {
+        assertThatExceptionOfType(AvatarMediaTypeNotSupportedException.class)
+                .isThrownBy(() -> avatarUploadLimits.maxSize("image/"));
+        assertThat(avatarUploadLimits.largestRequestSize()).isEqualTo(1024 * 300 + 16 * 1024);
+    }
+
+    @Test
+    void findContentMediaType_thumbnailKey_derivesTypeFromBlobOnce() {
+        when(avatarBlobRepository.findMediaType("abc123")).thenReturn(Optional.of("image/gif"));
+        when(avatarImageProcessor.thumbnailMediaType("image/gif")).thenReturn("image/png");
+
+        assertThat(avatarService.findContentMediaType("abc123-128")).contains("image/png");
+        assertThat(avatarService.findContentMediaType("abc123-128")).contains("image/png");
+        verify(avatarBlobRepository, times(1)).findMediaType("abc123");
+    }
+
+    @Test
+    void findContentMediaType_unsupportedStoredType_isNotServed() {
+        when(avatarBlobRepository.findMediaType("abc123")).thenReturn(Optional.of("image/svg+xml"));
+
+        assertThat(avatarService.findContentMediaType("abc123")).isEmpty();
+    }
+
+    @Test
+    void importAvatars_unknownStudent_rejectsOnlyThatEntry() throws IOException {
+        when(studentService.findStudents(anyCollection())).thenReturn(List.of(testStudent1));
+        when(avatarRepository.findByStudentIdIn(anyCollection())).thenReturn(List.of());
+        when(avatarBlobRepository.insertIfAbsent("digest1", testAvatarData.length, "image/jpeg")).thenReturn(1);
+
+        List<AvatarImportResult> results = avatarService.importAvatars(List.of(
+                new AvatarImportEntry("1.jpg", 1L, "image/jpeg", "digest1", testAvatarData),
+                new AvatarImportEntry("2.jpg", 2L, "image/jpeg", "digest2", testAvatarData)
+        ));
+
+        assertThat(results).extracting(AvatarImportResult::status)
+                .containsExactly(AvatarImportResult.Status.IMPORTED, AvatarImportResult.Status.REJECTED);
+        verify(avatarStore, times(1)).write("digest1", testAvatarData);
+        verify(avatarRepository, times(1)).save(argThat(avatar -> "digest1".equals(avatar.getDigest())));
+    }
+
     @Test
     void deleteAvatar_existingAvatar_deletesAvatarAndFile() throws IOException {
         testAvatar1.setId(7L);
@@ -206,6 +574,25 @@ class AvatarServiceTest {
         assertThat(Files.exists(testFilePath)).isFalse();
     }
 
+    @Test
+    void deleteAvatar_lastBlobReference_deletesBlobAndContent() throws IOException {
+        testAvatar1.setId(12L);
+        testStudent1.setId(12L);
+        testAvatar1.setDigest("abc123");
+        AvatarBlob blob = new AvatarBlob();
+        blob.setDigest("abc123");
+        blob.setReferenceCount(0);
+        when(avatarRepository.findByStudentId(12L)).thenReturn(Optional.of(testAvatar1));
+        when(avatarBlobRepository.findById("abc123")).thenReturn(Optional.of(blob));
+
+        avatarService.deleteAvatar(12L);
+
+        verify(avatarBlobRepository, times(1)).decrementReferenceCount("abc123");
+        verify(avatarStore, times(1)).delete("abc123");
+        verify(avatarImageProcessor, times(1)).deleteThumbnails("abc123");
+        verify(avatarBlobRepository, times(1)).delete(blob);
+    }
+
     @Test
     void deleteAvatar_avatarNotFound_throwsException() {
         testAvatar1.setId(8L);
@@ -214,4 +601,80 @@ class AvatarServiceTest {
         assertThatExceptionOfType(StudentNotFoundException.class).isThrownBy(() -> avatarService.deleteAvatar(8L));
         verify(avatarRepository, never()).deleteById(anyLong());
     }
+
+    @Test
+    void reconcileBlob_wrongReferenceCount_recountsReferences() {
+        AvatarBlob blob = new AvatarBlob();
+        blob.setDigest("abc123");
+        blob.setReferenceCount(3);
+        when(avatarBlobRepository.findForUpdate("abc123")).thenReturn(Optional.of(blob));
+        when(avatarRepository.countByDigest("abc123")).thenReturn(1L);
+
+        assertThat(avatarService.reconcileBlob("abc123")).isEqualTo(AvatarService.BlobReconciliation.REFERENCES_FIXED);
+        assertThat(blob.getReferenceCount()).isEqualTo(1);
+        verify(avatarBlobRepository, never()).delete(any());
+    }
+
+    @Test
+    void reconcileBlob_unreferencedBlob_removesBlobAndContent() throws IOException {
+        AvatarBlob blob = new AvatarBlob();
+        blob.setDigest("abc123");
+        blob.setReferenceCount(1);
+        when(avatarBlobRepository.findForUpdate("abc123")).thenReturn(Optional.of(blob));
+        when(avatarRepository.countByDigest("abc123")).thenReturn(0L);
+
+        assertThat(avatarService.reconcileBlob("abc123")).isEqualTo(AvatarService.BlobReconciliation.ORPHAN_REMOVED);
+        verify(avatarBlobRepository, times(1)).delete(blob);
+        verify(avatarStore, times(1)).delete("abc123");
+        verify(avatarImageProcessor, times(1)).deleteThumbnails("abc123");
+    }
+
+    @Test
+    void migrateLegacyBlob_contentOnlyInLegacyFile_movesItIntoStore() throws IOException, NoSuchAlgorithmException {
+        Path legacyFile = Files.write(Files.createTempFile("legacy-avatar", ".jpg"), testAvatarData);
+        String digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(testAvatarData));
+        AvatarBlob blob = new AvatarBlob();
+        blob.setDigest(digest);
+        blob.setFilePath(legacyFile.toString());
+        when(avatarBlobRepository.findForUpdate(digest)).thenReturn(Optional.of(blob));
+        when(avatarStore.contains(digest)).thenReturn(false);
+        when(avatarStore.write(digest, testAvatarData)).thenReturn("store/" + digest);
+
+        assertThat(avatarService.migrateLegacyBlob(digest)).isTrue();
+        assertThat(blob.getFilePath()).isEqualTo("store/" + digest);
+        verify(avatarRepository, times(1)).updateFilePathByDigest(digest, "store/" + digest);
+        assertThat(legacyFile).doesNotExist();
+    }
+
+    @Test
+    void migrateLegacyBlob_fileDoesNotMatchDigest_leavesItInPlace() throws IOException {
+        Path legacyFile = Files.write(Files.createTempFile("legacy-avatar", ".jpg"), testAvatarData);
+        AvatarBlob blob = new AvatarBlob();
+        blob.setDigest("abc123");
+        blob.setFilePath(legacyFile.toString());
+        when(avatarBlobRepository.findForUpdate("abc123")).thenReturn(Optional.of(blob));
+        when(avatarStore.contains("abc123")).thenReturn(false);
+
+        assertThat(avatarService.migrateLegacyBlob("abc123")).isFalse();
+        verify(avatarStore, never()).write(any(), any(byte[].class));
+        assertThat(legacyFile).exists();
+        Files.delete(legacyFile);
+    }
+
+    private AvatarMetadata toMetadata(Avatar avatar) {
+        return toMetadata(avatar, false);
+    }
+
+    private AvatarMetadata toMetadata(Avatar avatar, boolean optimized) {
+        return new AvatarMetadata(
+                avatar.getId(),
+                avatar.getStudent().getId(),
+                avatar.getFilePath(),
+                avatar.getFileSize(),
+                avatar.getMediaType(),
+                avatar.getDigest(),
+                avatar.getUpdatedAt(),
+                optimized
+        );
+    }
 }
@@ -5,10 +5,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
 import ru.hogwarts.school.exception.FacultyNotFoundException;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.FacultySort;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.repository.StudentRepository;
 
 import java.util.Collection;
 import java.util.List;
@@ -38,6 +42,12 @@ public class FacultyServiceTest {
     @Mock
     private FacultyRepository facultyRepository;
 
+    @Mock
+    private StudentRepository studentRepository;
+
+    @Mock
+    private JsonStreamWriter jsonStreamWriter;
+
     @InjectMocks
     private FacultyService facultyService;
 
@@ -207,4 +217,28 @@ public class FacultyServiceTest {
 
         assertThat(result).isEqualTo(1784293664);
     }
+
+    @Test
+    void shouldReturnFacultiesPageByName_ThenReturnCursorAfterLastFaculty() {
+        mockFaculty1.setId(1L);
+        mockFaculty2.setId(2L);
+        when(facultyRepository.findPageByName(eq(""), eq(-1L), any(Pageable.class))).thenReturn(List.of(mockFaculty1, mockFaculty2));
+        when(facultyRepository.findPageByName(eq(mockFaculty2.getName()), eq(2L), any(Pageable.class))).thenReturn(List.of());
+
+        CursorPage<Faculty> firstPage = facultyService.getFacultiesPage(FacultySort.NAME, 2, null);
+        CursorPage<Faculty> secondPage = facultyService.getFacultiesPage(FacultySort.NAME, 2, firstPage.nextCursor());
+
+        assertThat(firstPage.items()).containsExactly(mockFaculty1, mockFaculty2);
+        assertThat(secondPage.items()).isEmpty();
+        assertThat(secondPage.nextCursor()).isNull();
+    }
+
+    @Test
+    void shouldReturnFacultyStudentsPage_WhenFacultyNotExists_ThenThrowFacultyNotFoundException() {
+        when(facultyRepository.existsById(5L)).thenReturn(false);
+
+        assertThatExceptionOfType(FacultyNotFoundException.class).isThrownBy(() -> facultyService.getFacultyStudentsPage(5L, 20, null));
+
+        verify(studentRepository, never()).findFacultyPage(anyLong(), anyLong(), any());
+    }
 }
@@ -0,0 +1,81 @@
+package ru.hogwarts.school.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.hogwarts.school.model.Student;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JsonStreamWriterTest {
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private JsonStreamWriter jsonStreamWriter;
+
+    @Test
+    void write_ndjson_writesOneStudentPerLineAndDetachesThem() throws IOException {
+        Student student1 = createStudent(1L, "Harry", 11);
+        Student student2 = createStudent(2L, "Ron", 12);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = jsonStreamWriter.write(Stream.of(student1, student2), out, JsonStreamWriter.Format.NDJSON);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+
+        assertThat(written).isEqualTo(2);
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readValue(lines[0], Student.class)).isEqualTo(student1);
+        assertThat(objectMapper.readValue(lines[1], Student.class)).isEqualTo(student2);
+        verify(entityManager, times(1)).detach(student1);
+        verify(entityManager, times(1)).detach(student2);
+    }
+
+    @Test
+    void write_json_writesArray() throws IOException {
+        Student student = createStudent(1L, "Harry", 11);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        jsonStreamWriter.write(Stream.of(student), out, JsonStreamWriter.Format.JSON);
+
+        assertThat(objectMapper.readValue(out.toByteArray(), Student[].class)).containsExactly(student);
+    }
+
+    @Test
+    void write_noRows_writesEmptyDocument() throws IOException {
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+        jsonStreamWriter.write(Stream.empty(), ndjson, JsonStreamWriter.Format.NDJSON);
+        jsonStreamWriter.write(Stream.empty(), json, JsonStreamWriter.Format.JSON);
+
+        assertThat(ndjson.toString(StandardCharsets.UTF_8)).isEmpty();
+        assertThat(json.toString(StandardCharsets.UTF_8)).isEqualTo("[]");
+        verifyNoInteractions(entityManager);
+    }
+
+    private Student createStudent(long id, String name, int age) {
+        Student student = new Student();
+        student.setId(id);
+        student.setName(name);
+        student.setAge(age);
+
+        return student;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the copy through {@code COPY FROM STDIN} / {@code COPY TO STDOUT} and the PostgreSQL sequence update.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SchoolCopyServicePostgresTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("schema/baseline.sql");
+
+    @TempDir
+    private Path dir;
+
+    private SchoolCopyService schoolCopyService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+        schoolCopyService = new SchoolCopyService(dataSource);
+
+        execute("TRUNCATE student, faculty CASCADE");
+        execute("SELECT setval('faculty_seq', 1, false)");
+    }
+
+    @Test
+    void importFaculties_copiesRowsAndMovesSequencePastThemButNeverBack() throws Exception {
+        Path faculties = Files.writeString(dir.resolve("faculties.csv"), """
+                id,name,color
+                7,Gryffindor,red
+                ,Slytherin,green
+                """);
+        Path moreFaculties = Files.writeString(dir.resolve("more-faculties.csv"), """
+                id,name,color
+                20,Hufflepuff,yellow
+                """);
+
+        assertThat(schoolCopyService.importFaculties(faculties).rows()).isEqualTo(2);
+        // Slytherin is numbered 8; the next pooled block starts past it.
+        assertThat(queryLong("SELECT nextval('faculty_seq')")).isEqualTo(59);
+
+        execute("SELECT setval('faculty_seq', 1000)");
+        schoolCopyService.importFaculties(moreFaculties);
+
+        assertThat(queryLong("SELECT nextval('faculty_seq')")).isEqualTo(1050);
+
+        Path export = dir.resolve("export.csv");
+
+        assertThat(schoolCopyService.exportFaculties(export).rows()).isEqualTo(3);
+        assertThat(Files.readAllLines(export)).containsExactly(
+                "id,name,color", "7,Gryffindor,red", "8,Slytherin,green", "20,Hufflepuff,yellow");
+    }
+
+    private void execute(String sql) throws Exception {
+        try (Connection connection = postgres.createConnection(""); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private long queryLong(String sql) throws Exception {
+        try (Connection connection = postgres.createConnection("");
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+
+            return result.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ru.hogwarts.school.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hogwarts.school.model.TableCopyReport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SchoolCopyServiceTest {
+    @TempDir
+    private Path dir;
+
+    private JdbcDataSource dataSource;
+    private SchoolCopyService schoolCopyService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        schoolCopyService = new SchoolCopyService(dataSource);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SEQUENCE faculty_seq START WITH 1 INCREMENT BY 50");
+            statement.execute("CREATE SEQUENCE student_seq START WITH 1 INCREMENT BY 50");
+            statement.execute("CREATE TABLE faculty (id BIGINT PRIMARY KEY, name VARCHAR(255), color VARCHAR(255))");
+            statement.execute("CREATE TABLE student (id BIGINT PRIMARY KEY, name VARCHAR(255), age INTEGER, " +
+                    "faculty_id BIGINT REFERENCES faculty (id))");
+        }
+    }
+
+    @Test
+    void importStudents_resolvesFacultiesByNameAndExportsTheSameRows() throws Exception {
+        Path faculties = Files.writeString(dir.resolve("faculties.csv"), """
+                id,name,color
+                7,Gryffindor,red
+                ,Slytherin,green
+                """);
+        Path students = Files.writeString(dir.resolve("students.csv"), """
+                id,name,age,faculty
+                1,Harry,11,Gryffindor
+                ,Draco,12,Slytherin
+                3,Luna,11,
+                """);
+
+        TableCopyReport facultyReport = schoolCopyService.importFaculties(faculties);
+        TableCopyReport studentReport = schoolCopyService.importStudents(students);
+
+        assertThat(facultyReport.rows()).isEqualTo(2);
+        assertThat(studentReport.rows()).isEqualTo(3);
+        assertThat(studentReport.bytes()).isEqualTo(Files.size(students));
+        assertThat(query("SELECT s.name || ':' || COALESCE(f.name, '-') FROM student s " +
+                "LEFT JOIN faculty f ON f.id = s.faculty_id ORDER BY s.name"))
+                .containsExactly("Draco:Slytherin", "Harry:Gryffindor", "Luna:-");
+        assertThat(query("SELECT CAST(id AS VARCHAR) FROM student WHERE name = 'Harry'")).containsExactly("1");
+
+        Path export = dir.resolve("export.csv");
+        TableCopyReport exportReport = schoolCopyService.exportStudents(export);
+
+        assertThat(exportReport.rows()).isEqualTo(3);
+        assertThat(Files.readAllLines(export)).hasSize(4);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM student");
+        }
+
+        schoolCopyService.importStudents(export);
+
+        assertThat(query("SELECT name FROM student ORDER BY name")).containsExactly("Draco", "Harry", "Luna");
+    }
+
+    @Test
+    void importStudents_rejectsTheWholeFileWhenNamesRepeatOrFacultiesAreUnknown() throws Exception {
+        Path students = Files.writeString(dir.resolve("students.csv"), """
+                id,name,age,faculty
+                ,Harry,11,
+                ,Harry,12,
+                ,Ron,11,Hufflepuff
+                """);
+
+        assertThatThrownBy(() -> schoolCopyService.importStudents(students))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("1 names repeated in the file")
+                .hasMessageContaining("1 unknown faculties");
+        assertThat(query("SELECT name FROM student")).isEmpty();
+    }
+
+    @Test
+    void importFaculties_movesSequencePastLoadedIdsButNeverBack() throws Exception {
+        Path faculties = Files.writeString(dir.resolve("faculties.csv"), """
+                id,name,color
+                7,Gryffindor,red
+                """);
+        Path moreFaculties = Files.writeString(dir.resolve("more-faculties.csv"), """
+                id,name,color
+                8,Slytherin,green
+                """);
+
+        schoolCopyService.importFaculties(faculties);
+
+        assertThat(query("SELECT CAST(NEXT VALUE FOR faculty_seq AS VARCHAR)")).containsExactly("58");
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("ALTER SEQUENCE faculty_seq RESTART WITH 1000");
+        }
+
+        schoolCopyService.importFaculties(moreFaculties);
+
+        assertThat(query("SELECT CAST(NEXT VALUE FOR faculty_seq AS VARCHAR)")).containsExactly("1000");
+    }
+
+    private List<String> query(String sql) throws Exception {
+        List<String> values = new ArrayList<>();
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            while (result.next()) {
+                values.add(result.getString(1));
+            }
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.hogwarts.school.model.StudentAgeStats;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StudentAgeAggregateTest {
+    @Mock
+    private StudentRepository studentRepository;
+
+    private StudentAgeAggregate studentAgeAggregate;
+
+    @AfterEach
+    void tearDown() {
+        studentAgeAggregate.shutdown();
+    }
+
+    @Test
+    void averageAge_afterChanges_answersWithoutQueryingAgain() {
+        studentAgeAggregate = new StudentAgeAggregate(studentRepository, 300);
+        when(studentRepository.getAgeStats()).thenReturn(new StudentAgeStats(3, 51, 16, 18));
+
+        assertThat(studentAgeAggregate.averageAge()).isEqualTo(17);
+
+        studentAgeAggregate.added(20);
+        studentAgeAggregate.changed(17, 15);
+        studentAgeAggregate.changed(20, 21);
+
+        assertThat(studentAgeAggregate.averageAge()).isEqualTo(17);
+        assertThat(studentAgeAggregate.stats()).isEqualTo(new StudentAgeStats(4, 70, 15, 21));
+        verify(studentRepository, times(1)).getAgeStats();
+    }
+
+    @Test
+    void stats_youngestStudentAgedInwards_reloadsBounds() {
+        studentAgeAggregate = new StudentAgeAggregate(studentRepository, 300);
+        when(studentRepository.getAgeStats()).thenReturn(
+                new StudentAgeStats(2, 34, 16, 18),
+                new StudentAgeStats(2, 35, 17, 18)
+        );
+
+        studentAgeAggregate.stats();
+        studentAgeAggregate.changed(16, 17);
+
+        assertThat(studentAgeAggregate.averageAge()).isEqualTo(17);
+        assertThat(studentAgeAggregate.stats()).isEqualTo(new StudentAgeStats(2, 35, 17, 18));
+        verify(studentRepository, times(2)).getAgeStats();
+    }
+
+    @Test
+    void stats_oldestStudentRemoved_reloadsBounds() {
+        studentAgeAggregate = new StudentAgeAggregate(studentRepository, 300);
+        when(studentRepository.getAgeStats()).thenReturn(
+                new StudentAgeStats(3, 51, 16, 18),
+                new StudentAgeStats(2, 33, 16, 17)
+        );
+
+        studentAgeAggregate.stats();
+        studentAgeAggregate.removed(18);
+
+        assertThat(studentAgeAggregate.stats()).isEqualTo(new StudentAgeStats(2, 33, 16, 17));
+        verify(studentRepository, times(2)).getAgeStats();
+    }
+
+    @Test
+    void stats_emptyTable_returnsZeroAverage() {
+        studentAgeAggregate = new StudentAgeAggregate(studentRepository, 300);
+        when(studentRepository.getAgeStats()).thenReturn(StudentAgeStats.EMPTY);
+
+        assertThat(studentAgeAggregate.averageAge()).isZero();
+        assertThat(studentAgeAggregate.stats()).isEqualTo(StudentAgeStats.EMPTY);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.hogwarts.school.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.hogwarts.school.model.Student;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StudentBulkWriterTest {
+    @Mock
+    private EntityManager entityManager;
+
+    @Test
+    void persistAll_flushesEveryBatchAndKeepsOrder() {
+        StudentBulkWriter studentBulkWriter = new StudentBulkWriter(entityManager, 2);
+        List<Student> students = IntStream.range(0, 5).mapToObj(i -> {
+            Student student = new Student();
+            student.setId(100 + i);
+            student.setName("Student " + i);
+
+            return student;
+        }).toList();
+
+        List<Student> result = studentBulkWriter.persistAll(students);
+
+        assertThat(result).isEqualTo(students);
+        assertThat(students).allMatch(student -> student.getId() == 0);
+
+        InOrder inOrder = inOrder(entityManager);
+        inOrder.verify(entityManager, times(2)).persist(any(Student.class));
+        inOrder.verify(entityManager).flush();
+        inOrder.verify(entityManager).clear();
+        inOrder.verify(entityManager, times(2)).persist(any(Student.class));
+        inOrder.verify(entityManager).flush();
+        inOrder.verify(entityManager).clear();
+        inOrder.verify(entityManager).persist(any(Student.class));
+        inOrder.verify(entityManager).flush();
+        inOrder.verify(entityManager).clear();
+    }
+}
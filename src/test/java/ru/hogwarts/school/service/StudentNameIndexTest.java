@@ -0,0 +1,62 @@
+package ru.hogwarts.school.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.hogwarts.school.model.StudentNameEntry;
+import ru.hogwarts.school.repository.StudentRepository;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StudentNameIndexTest {
+    @Mock
+    private StudentRepository studentRepository;
+
+    private StudentNameIndex studentNameIndex;
+
+    @AfterEach
+    void tearDown() {
+        studentNameIndex.shutdown();
+    }
+
+    @Test
+    void reconcile_writesDuringReload_areKeptInReloadedIndex() {
+        studentNameIndex = new StudentNameIndex(studentRepository, true, 300);
+        when(studentRepository.findAllNames()).thenAnswer(invocation -> {
+            studentNameIndex.put(3L, "Anna");
+            studentNameIndex.remove(1L);
+
+            return List.of(new StudentNameEntry(1L, "Alice"), new StudentNameEntry(2L, "Andrew"));
+        });
+
+        studentNameIndex.reconcile();
+
+        assertThat(studentNameIndex.isReady()).isTrue();
+        assertThat(studentNameIndex.findByPrefix("a", PageCursor.FIRST, 10)).containsExactly(
+                new StudentNameEntry(2L, "Andrew"),
+                new StudentNameEntry(3L, "Anna")
+        );
+    }
+
+    @Test
+    void findByPrefix_supplementaryCharacters_orderedByCodePoint() {
+        studentNameIndex = new StudentNameIndex(studentRepository, true, 300);
+        when(studentRepository.findAllNames()).thenReturn(List.of(
+                new StudentNameEntry(1L, "a😀"),
+                new StudentNameEntry(2L, "aＡ")
+        ));
+
+        studentNameIndex.reconcile();
+
+        assertThat(studentNameIndex.findByPrefix("a", PageCursor.FIRST, 10)).containsExactly(
+                new StudentNameEntry(2L, "aＡ"),
+                new StudentNameEntry(1L, "a😀")
+        );
+    }
+}
@@ -5,14 +5,23 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import ru.hogwarts.school.exception.InvalidCursorException;
 import ru.hogwarts.school.exception.StudentNotFoundException;
+import ru.hogwarts.school.model.CursorPage;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.model.StudentNameEntry;
+import ru.hogwarts.school.model.StudentNamePage;
+import ru.hogwarts.school.model.StudentSort;
 import ru.hogwarts.school.repository.StudentRepository;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -52,6 +61,18 @@ public class StudentServiceTest {
     @Mock
     private StudentRepository studentRepository;
 
+    @Mock
+    private StudentAgeAggregate studentAgeAggregate;
+
+    @Mock
+    private StudentNameIndex studentNameIndex;
+
+    @Mock
+    private JsonStreamWriter jsonStreamWriter;
+
+    @Mock
+    private StudentBulkWriter studentBulkWriter;
+
     @InjectMocks
     private StudentService studentService;
 
@@ -65,6 +86,22 @@ public class StudentServiceTest {
         assertThat(result).isEqualTo(mockStudent1.getId());
 
         verify(studentRepository, times(1)).save(eq(mockStudent1));
+        verify(studentAgeAggregate, times(1)).added(mockStudent1.getAge());
+    }
+
+    @Test
+    void shouldAddStudents_ThenReturnTheirIdsInInputOrder() {
+        mockStudent1.setId(51L);
+        mockStudent2.setId(50L);
+        List<Student> students = List.of(mockStudent1, mockStudent2);
+        when(studentBulkWriter.persistAll(students)).thenReturn(students);
+
+        List<Long> result = studentService.addStudents(students);
+
+        assertThat(result).containsExactly(51L, 50L);
+        verify(studentAgeAggregate, times(1)).added(mockStudent1.getAge());
+        verify(studentNameIndex, times(1)).put(50L, mockStudent2.getName());
+        verify(studentRepository, never()).save(any(Student.class));
     }
 
     @Test
@@ -92,6 +129,7 @@ public class StudentServiceTest {
     @Test
     void shouldUpdateStudent_WhenStudentExists_ThenReturnThatStudent() {
         mockStudent1.setId(4L);
+        when(studentRepository.findAgeById(mockStudent1.getId())).thenReturn(Optional.of(20));
         when(studentRepository.save(any(Student.class))).thenReturn(mockStudent1);
 
         Student result = studentService.updateStudent(mockStudent1);
@@ -99,15 +137,18 @@ public class StudentServiceTest {
         assertThat(result).isEqualTo(mockStudent1);
 
         verify(studentRepository, times(1)).save(eq(mockStudent1));
+        verify(studentAgeAggregate, times(1)).changed(20, mockStudent1.getAge());
     }
 
     @Test
     void shouldDeleteStudent_ThenReturnThatStudent() {
         mockStudent1.setId(5L);
+        when(studentRepository.findAgeById(mockStudent1.getId())).thenReturn(Optional.of(mockStudent1.getAge()));
 
         studentService.deleteStudent(mockStudent1.getId());
 
         verify(studentRepository, times(1)).deleteById(eq(mockStudent1.getId()));
+        verify(studentAgeAggregate, times(1)).removed(mockStudent1.getAge());
     }
 
     @Test
@@ -123,6 +164,18 @@ public class StudentServiceTest {
         assertThat(result).isEqualTo(mockStudentList);
     }
 
+    @Test
+    void shouldWriteAllStudents_ThenStreamThemWithoutLoadingAll() throws IOException {
+        Stream<Student> students = Stream.of(mockStudent1, mockStudent2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(studentRepository.streamAll()).thenReturn(students);
+
+        studentService.writeAllStudents(out, JsonStreamWriter.Format.NDJSON);
+
+        verify(jsonStreamWriter, times(1)).write(students, out, JsonStreamWriter.Format.NDJSON);
+        verify(studentRepository, never()).findAll();
+    }
+
     @Test
     void shouldReturnStudentsByDefinedAge_ThenReturnTheseStudentsByCorrespondingAge() {
         mockStudent1.setId(8L);
@@ -196,13 +249,14 @@ public class StudentServiceTest {
 
     @Test
     void shouldReturnAverageAgeOfAllStudents_ThenReturnAverageAgeOfAllStudents() {
-        when(studentRepository.getAverageStudentsAge()).thenReturn(17);
+        when(studentAgeAggregate.averageAge()).thenReturn(17);
 
         int result = studentService.getStudentsAverageAge();
 
         assertThat(result).isEqualTo(17);
 
-        verify(studentRepository, times(1)).getAverageStudentsAge();
+        verify(studentAgeAggregate, times(1)).averageAge();
+        verify(studentRepository, never()).findAll();
     }
 
     @Test
@@ -225,10 +279,8 @@ public class StudentServiceTest {
     @Test
     void shouldFindStudentsWithNamesStartWithA_ThenReturnThatStudentsListNames() {
         mockStudent4.setId(8L);
-        mockStudent5.setId(9L);
-        List<Student> mockStudentList = List.of(mockStudent4, mockStudent5);
-
-        when(studentRepository.findAll()).thenReturn(mockStudentList);
+        when(studentRepository.findByNamePrefix(eq("a%"), eq(""), eq(-1L), any(Pageable.class)))
+                .thenReturn(List.of(new StudentNameEntry(8L, mockStudent4.getName()), new StudentNameEntry(9L, "anna lowercase")));
 
         List<String> result = studentService.getStudentsStartWithCharA();
 
@@ -237,16 +289,66 @@ public class StudentServiceTest {
     }
 
     @Test
-    void shouldFindStudentsAverageAgeUsingStreamAPI_ThenReturnThatStudentsAverageAge() {
-        mockStudent4.setId(8L);
-        mockStudent5.setId(9L);
-        List<Student> mockStudentList = List.of(mockStudent4, mockStudent5);
+    void shouldReturnStudentsPageByAge_ThenContinueAfterLastAgeAndId() {
+        mockStudent1.setId(30L);
+        mockStudent3.setId(31L);
+        when(studentRepository.findPageByAge(eq(Integer.MIN_VALUE), eq(-1L), any(Pageable.class)))
+                .thenReturn(List.of(mockStudent3, mockStudent1));
+        when(studentRepository.findPageByAge(eq(mockStudent1.getAge()), eq(30L), any(Pageable.class)))
+                .thenReturn(List.of(mockStudent2));
+
+        CursorPage<Student> firstPage = studentService.getStudentsPage(StudentSort.AGE, 2, null);
+        CursorPage<Student> secondPage = studentService.getStudentsPage(StudentSort.AGE, 2, firstPage.nextCursor());
+
+        assertThat(firstPage.items()).containsExactly(mockStudent3, mockStudent1);
+        assertThat(secondPage.items()).containsExactly(mockStudent2);
+        assertThat(secondPage.nextCursor()).isNull();
+    }
 
-        when(studentRepository.findAll()).thenReturn(mockStudentList);
+    @Test
+    void shouldReturnStudentsPageByAge_WhenCursorIsFromNameOrder_ThenThrowInvalidCursorException() {
+        String nameCursor = new PageCursor("Ivan", 3L).encode();
+
+        assertThatExceptionOfType(InvalidCursorException.class)
+                .isThrownBy(() -> studentService.getStudentsPage(StudentSort.AGE, 2, nameCursor));
+    }
+
+    @Test
+    void shouldFindStudentsByNamePrefix_ThenContinueFromCursor() {
+        when(studentRepository.findByNamePrefix(eq("a\\_b%"), eq(""), eq(-1L), any(Pageable.class)))
+                .thenReturn(List.of(new StudentNameEntry(3L, "A_Bc"), new StudentNameEntry(7L, "a_bd")));
+        when(studentRepository.findByNamePrefix(eq("a\\_b%"), eq("a_bd"), eq(7L), any(Pageable.class)))
+                .thenReturn(List.of(new StudentNameEntry(9L, "A_be")));
+
+        StudentNamePage firstPage = studentService.getStudentsByNamePrefix("A_B", 2, null);
+        StudentNamePage secondPage = studentService.getStudentsByNamePrefix("A_B", 2, firstPage.nextCursor());
+
+        assertThat(firstPage.students()).extracting(StudentNameEntry::id).containsExactly(3L, 7L);
+        assertThat(secondPage.students()).extracting(StudentNameEntry::id).containsExactly(9L);
+        assertThat(secondPage.nextCursor()).isNull();
+        verify(studentRepository, never()).findAll();
+    }
+
+    @Test
+    void shouldFindStudentsByNamePrefix_WhenIndexIsReady_ThenSkipDatabase() {
+        when(studentNameIndex.isReady()).thenReturn(true);
+        when(studentNameIndex.findByPrefix("an", PageCursor.FIRST, 20))
+                .thenReturn(List.of(new StudentNameEntry(8L, mockStudent4.getName())));
+
+        StudentNamePage result = studentService.getStudentsByNamePrefix("An", 20, null);
+
+        assertThat(result.students()).containsExactly(new StudentNameEntry(8L, mockStudent4.getName()));
+        verify(studentRepository, never()).findByNamePrefix(any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void shouldFindStudentsAverageAgeUsingStreamAPI_ThenReturnThatStudentsAverageAge() {
+        when(studentAgeAggregate.averageAge()).thenReturn((mockStudent4.getAge() + mockStudent5.getAge()) / 2);
 
         Integer result = studentService.getAverageAge();
 
         assertThat(result).isEqualTo((mockStudent4.getAge() + mockStudent5.getAge()) / 2);
+        verify(studentRepository, never()).findAll();
     }
 
     @Test
@@ -0,0 +1,40 @@
+package ru.hogwarts.school.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.hogwarts.school.repository.AvatarBlobRepository;
+import ru.hogwarts.school.repository.AvatarRepository;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvatarFanOutMigrationTest {
+    @Mock
+    private FileSystemAvatarStore fileSystemAvatarStore;
+
+    @Mock
+    private AvatarRepository avatarRepository;
+
+    @Mock
+    private AvatarBlobRepository avatarBlobRepository;
+
+    @Test
+    void migrate_movedAndDuplicateFiles_pointsRowsAtFanOutPaths() throws IOException {
+        AvatarFanOutMigration migration = new AvatarFanOutMigration(fileSystemAvatarStore, avatarRepository, avatarBlobRepository, 2);
+        FileSystemAvatarStore.Relocation moved = new FileSystemAvatarStore.Relocation("ab", "avatars/ab", "avatars/ab/ab", false);
+        FileSystemAvatarStore.Relocation duplicate = new FileSystemAvatarStore.Relocation("cd", "avatars/cd", "avatars/cd/cd", true);
+        when(fileSystemAvatarStore.migrateToFanOut(2)).thenReturn(List.of(moved, duplicate), List.of());
+
+        migration.migrate();
+
+        verify(avatarBlobRepository, times(1)).replaceFilePath("ab", "avatars/ab", "avatars/ab/ab");
+        verify(avatarRepository, times(1)).replaceFilePath("ab", "avatars/ab", "avatars/ab/ab");
+        verify(avatarBlobRepository, times(1)).replaceFilePath("cd", "avatars/cd", "avatars/cd/cd");
+        verify(avatarRepository, times(1)).replaceFilePath("cd", "avatars/cd", "avatars/cd/cd");
+    }
+}
@@ -0,0 +1,78 @@
+package ru.hogwarts.school.storage;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares single-write and dual-write avatar store modes on a 300 KB avatar.
+ * The database store needs a running application context and is therefore left out.
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ru.hogwarts.school.storage.AvatarStoreBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvatarStoreBenchmark {
+    @Param({"filesystem", "object", "filesystem+object"})
+    private String mode;
+
+    private Path root;
+    private AvatarStore store;
+    private byte[] data;
+    private long counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("avatar-store-benchmark");
+        data = new byte[1024 * 300];
+        new Random(42).nextBytes(data);
+
+        AvatarStore fileSystemStore = new FileSystemAvatarStore(root.resolve("avatars").toString(), 2);
+        AvatarStore objectStore = new ObjectStoreAvatarStore(root.toString(), "bucket");
+
+        store = switch (mode) {
+            case "filesystem" -> fileSystemStore;
+            case "object" -> objectStore;
+            default -> new ReplicatedAvatarStore(fileSystemStore, objectStore);
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var paths = Files.walk(root)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String write() throws IOException {
+        return store.write(Long.toString(counter++), data);
+    }
+
+    @Benchmark
+    public byte[] read() throws IOException {
+        return store.read("0").orElseGet(() -> {
+            try {
+                store.write("0", data);
+
+                return data;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AvatarStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,147 @@
+package ru.hogwarts.school.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvatarStoreTest {
+    private final byte[] testData = "test data".getBytes();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void fileSystemStore_writtenContent_isReadableAndLocatable() throws IOException {
+        AvatarStore store = new FileSystemAvatarStore(tempDir.toString(), 0);
+
+        store.write("abc", testData);
+
+        assertThat(store.read("abc")).contains(testData);
+        assertThat(store.locate("abc")).contains(new AvatarRegion(tempDir.resolve("abc"), 0, testData.length));
+
+        store.delete("abc");
+
+        assertThat(store.read("abc")).isEmpty();
+    }
+
+    @Test
+    void fileSystemStore_writtenFromFile_copiesFileAndLeavesSourceInPlace() throws IOException {
+        String key = "ab".repeat(32);
+        Path source = Files.write(tempDir.resolve("upload.tmp"), testData);
+        AvatarStore store = new FileSystemAvatarStore(tempDir.resolve("store").toString(), 2);
+
+        assertThat(store.write(key, source)).isEqualTo(tempDir.resolve("store/ab/ab/" + key).toString());
+
+        assertThat(store.read(key)).contains(testData);
+        assertThat(source).exists();
+    }
+
+    @Test
+    void fileSystemStore_fanOut_readsBothLayoutsAndMigratesFlatFiles() throws IOException {
+        String flatKey = "ab".repeat(32);
+        String nestedKey = "cd".repeat(32);
+        Files.write(tempDir.resolve(flatKey), testData);
+        Files.write(tempDir.resolve("12.png"), testData);
+        FileSystemAvatarStore store = new FileSystemAvatarStore(tempDir.toString(), 2);
+
+        store.write(nestedKey, testData);
+
+        assertThat(tempDir.resolve("cd/cd/" + nestedKey)).exists();
+        assertThat(store.read(flatKey)).contains(testData);
+        assertThat(store.keys("", 10)).containsExactly("12.png", flatKey, nestedKey);
+
+        Files.write(tempDir.resolve(nestedKey), testData);
+
+        assertThat(store.migrateToFanOut(10)).containsExactlyInAnyOrder(
+                new FileSystemAvatarStore.Relocation(flatKey, tempDir.resolve(flatKey).toString(),
+                        tempDir.resolve("ab/ab/" + flatKey).toString(), false),
+                new FileSystemAvatarStore.Relocation(nestedKey, tempDir.resolve(nestedKey).toString(),
+                        tempDir.resolve("cd/cd/" + nestedKey).toString(), true)
+        );
+        assertThat(store.migrateToFanOut(10)).isEmpty();
+
+        assertThat(tempDir.resolve("ab/ab/" + flatKey)).exists();
+        assertThat(tempDir.resolve(flatKey)).doesNotExist();
+        assertThat(tempDir.resolve("12.png")).exists();
+        assertThat(store.locate(flatKey)).contains(new AvatarRegion(tempDir.resolve("ab/ab/" + flatKey), 0, testData.length));
+    }
+
+    @Test
+    void fileSystemStore_fanOutKeys_pagesInOrderAcrossDirectories() throws IOException {
+        FileSystemAvatarStore store = new FileSystemAvatarStore(tempDir.toString(), 2);
+        List<String> keys = List.of("0a".repeat(32), "0a0b" + "0".repeat(60), "ab".repeat(32),
+                "ab".repeat(32) + "-opt", "ff".repeat(32));
+
+        for (String key : keys) {
+            store.write(key, testData);
+        }
+
+        assertThat(store.keys("", 2)).containsExactlyElementsOf(keys.subList(0, 2));
+        assertThat(store.keys(keys.get(1), 2)).containsExactlyElementsOf(keys.subList(2, 4));
+        assertThat(store.keys(keys.get(3), 2)).containsExactly(keys.get(4));
+        assertThat(store.keys(keys.get(4), 2)).isEmpty();
+    }
+
+    @Test
+    void objectStore_keys_pagesThroughOneListingAndSkipsDeletedObjects() throws IOException {
+        AvatarStore store = new ObjectStoreAvatarStore(tempDir.toString(), "avatars");
+
+        for (String key : List.of("a", "b", "c", "d")) {
+            store.write(key, testData);
+        }
+
+        assertThat(store.keys("", 2)).containsExactly("a", "b");
+
+        store.delete("c");
+        store.write("bb", testData);
+
+        assertThat(store.keys("b", 2)).containsExactly("d");
+        assertThat(store.keys("", 10)).containsExactly("a", "b", "bb", "d");
+    }
+
+    @Test
+    void objectStore_writtenContent_isReadableButNotLocatable() throws IOException {
+        AvatarStore store = new ObjectStoreAvatarStore(tempDir.toString(), "avatars");
+
+        String location = store.write("abc", testData);
+
+        assertThat(location).isEqualTo("object://avatars/abc");
+        assertThat(store.read("abc")).contains(testData);
+        assertThat(store.locate("abc")).isEmpty();
+    }
+
+    @Test
+    void replicatedStore_missingInPrimary_readsFromSecondary() throws IOException {
+        AvatarStore primary = new FileSystemAvatarStore(tempDir.resolve("primary").toString(), 0);
+        AvatarStore secondary = new ObjectStoreAvatarStore(tempDir.toString(), "secondary");
+        AvatarStore store = new ReplicatedAvatarStore(primary, secondary);
+
+        store.write("abc", testData);
+        primary.delete("abc");
+
+        Optional<byte[]> result = store.read("abc");
+
+        assertThat(result).contains(testData);
+    }
+
+    @Test
+    void replicatedStore_keys_listsContentOfBothStoresInOrder() throws IOException {
+        AvatarStore primary = new FileSystemAvatarStore(tempDir.resolve("primary").toString(), 0);
+        AvatarStore secondary = new ObjectStoreAvatarStore(tempDir.toString(), "secondary");
+        AvatarStore store = new ReplicatedAvatarStore(primary, secondary);
+
+        store.write("b", testData);
+        primary.write("a", testData);
+        secondary.write("c", testData);
+
+        assertThat(store.keys("", 2)).containsExactly("a", "b");
+        assertThat(store.keys("b", 2)).containsExactly("c");
+    }
+}
@@ -0,0 +1,51 @@
+package ru.hogwarts.school.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the Liquibase changelog against Postgres on top of the schema it was written for,
+ * and checks that the database store takes every kind of key the avatar service writes.
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+class DatabaseAvatarStoreSchemaTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("schema/baseline.sql");
+
+    @Autowired
+    private DatabaseAvatarStore databaseAvatarStore;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.driver-class-name", postgres::getDriverClassName);
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.liquibase.enabled", () -> "true");
+        registry.add("spring.liquibase.change-log", () -> "classpath:liquibase/changelog-master.yml");
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "validate");
+    }
+
+    @Test
+    void write_variantKeys_fitTheContentTable() {
+        String digest = "ab".repeat(32);
+
+        databaseAvatarStore.write(digest, "original".getBytes());
+        databaseAvatarStore.write(digest + "-128", "thumbnail".getBytes());
+        databaseAvatarStore.write(digest + "-opt", "optimized".getBytes());
+
+        assertThat(databaseAvatarStore.read(digest + "-128")).contains("thumbnail".getBytes());
+        assertThat(databaseAvatarStore.read(digest + "-opt")).contains("optimized".getBytes());
+        assertThat(databaseAvatarStore.keys(digest, 10)).containsExactly(digest + "-128", digest + "-opt");
+    }
+}
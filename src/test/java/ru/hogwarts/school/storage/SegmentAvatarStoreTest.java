@@ -0,0 +1,100 @@
+package ru.hogwarts.school.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentAvatarStoreTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void write_thenReopen_restoresIndexFromSegments() throws IOException {
+        SegmentAvatarStore store = new SegmentAvatarStore(tempDir.toString(), 1024 * 1024, 0.5, 600, false);
+        store.write("first", "first data".getBytes());
+        store.write("second", "second data".getBytes());
+        store.delete("first");
+        store.close();
+
+        SegmentAvatarStore reopened = new SegmentAvatarStore(tempDir.toString(), 1024 * 1024, 0.5, 600, false);
+
+        assertThat(reopened.contains("first")).isFalse();
+        assertThat(reopened.read("second")).contains("second data".getBytes());
+        reopened.close();
+    }
+
+    @Test
+    void locate_writtenContent_pointsIntoSegmentFile() throws IOException {
+        SegmentAvatarStore store = new SegmentAvatarStore(tempDir.toString(), 1024 * 1024, 0.5, 600, false);
+        store.write("key", "some data".getBytes());
+
+        AvatarRegion region = store.locate("key").orElseThrow();
+
+        byte[] segment = Files.readAllBytes(region.file());
+        assertThat(new String(segment, (int) region.offset(), (int) region.length())).isEqualTo("some data");
+        store.close();
+    }
+
+    @Test
+    void read_acrossSealedAndActiveSegments_returnsLatestContent() throws IOException {
+        SegmentAvatarStore store = new SegmentAvatarStore(tempDir.toString(), 64, 0.5, 600, false);
+        store.write("first", "first data".getBytes());
+        store.write("second", "second data".getBytes());
+        store.write("third", "third data".getBytes());
+
+        assertThat(store.read("first")).contains("first data".getBytes());
+        store.write("first", "rewritten".getBytes());
+
+        assertThat(store.read("first")).contains("rewritten".getBytes());
+        assertThat(store.read("second")).contains("second data".getBytes());
+        assertThat(store.read("third")).contains("third data".getBytes());
+        store.close();
+    }
+
+    @Test
+    void compact_mostlyDeadSegments_keepsLiveEntriesOnly() throws IOException {
+        SegmentAvatarStore store = new SegmentAvatarStore(tempDir.toString(), 64, 0.1, 600, false);
+        store.write("live", "live data".getBytes());
+        store.write("dead", "dead data".getBytes());
+        store.delete("dead");
+        store.write("other", "other data".getBytes());
+
+        store.compact();
+        store.compact();
+        store.close();
+
+        assertThat(tempDir.resolve("segment-000001.pack")).doesNotExist();
+
+        SegmentAvatarStore reopened = new SegmentAvatarStore(tempDir.toString(), 64, 0.1, 600, false);
+
+        assertThat(reopened.read("live")).contains("live data".getBytes());
+        assertThat(reopened.read("other")).contains("other data".getBytes());
+        assertThat(reopened.contains("dead")).isFalse();
+        reopened.close();
+    }
+
+    @Test
+    void importFiles_legacyLayouts_storesByContentDigest() throws IOException, NoSuchAlgorithmException {
+        Path avatars = Files.createDirectories(tempDir.resolve("avatars"));
+        String digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest("student".getBytes()));
+        Files.write(avatars.resolve("42.png"), "student".getBytes());
+        Files.write(avatars.resolve("a".repeat(64) + ".png"), "by digest".getBytes());
+        Files.write(avatars.resolve("7.png.part"), "partial".getBytes());
+
+        SegmentAvatarStore store = new SegmentAvatarStore(avatars.resolve("segments").toString(), 1024 * 1024, 0.5, 600, false);
+
+        assertThat(store.importFiles(avatars)).isEqualTo(2);
+        assertThat(store.read(digest)).contains("student".getBytes());
+        assertThat(store.read("a".repeat(64))).contains("by digest".getBytes());
+        assertThat(store.importFiles(avatars)).isZero();
+        store.close();
+    }
+}
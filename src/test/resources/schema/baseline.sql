@@ -0,0 +1,26 @@
+-- Tables as they existed before the Liquibase changelog took over the schema.
+CREATE SEQUENCE student_seq INCREMENT BY 50;
+CREATE SEQUENCE faculty_seq INCREMENT BY 50;
+CREATE SEQUENCE avatar_seq INCREMENT BY 50;
+
+CREATE TABLE faculty (
+    id BIGINT PRIMARY KEY,
+    name VARCHAR(255),
+    color VARCHAR(255)
+);
+
+CREATE TABLE student (
+    id BIGINT PRIMARY KEY,
+    name VARCHAR(255),
+    age INTEGER NOT NULL,
+    faculty_id BIGINT REFERENCES faculty (id)
+);
+
+CREATE TABLE avatar (
+    id BIGINT PRIMARY KEY,
+    file_path VARCHAR(255),
+    file_size BIGINT NOT NULL,
+    media_type VARCHAR(255),
+    data OID,
+    student_id BIGINT REFERENCES student (id)
+);